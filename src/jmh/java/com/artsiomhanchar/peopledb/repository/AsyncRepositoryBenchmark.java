@@ -0,0 +1,89 @@
+package com.artsiomhanchar.peopledb.repository;
+
+import com.artsiomhanchar.peopledb.model.Person;
+import com.artsiomhanchar.peopledb.pool.ConnectionPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves per second through a pool of poolSize connections: one after another with the blocking API,
+ * and {@value #SAVES_PER_CALL} at a time through {@link AsyncRepository}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsyncRepositoryBenchmark {
+    private static final int SAVES_PER_CALL = 100;
+
+    @Param({"8"})
+    private int poolSize;
+
+    private BenchmarkDatabase database;
+    private ConnectionPool pool;
+    private PeopleRepository repo;
+    private AsyncRepository<Person> asyncRepo;
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        database = BenchmarkDatabase.create(0);
+        pool = new ConnectionPool(database.dataSource(), poolSize);
+        repo = new PeopleRepository(pool);
+        asyncRepo = new AsyncRepository<>(repo, poolSize);
+    }
+
+    // the pooled connections commit every save, the table is emptied so every iteration starts alike
+    @TearDown(Level.Iteration)
+    public void deletePeople() throws SQLException {
+        try (Statement stmt = database.connection().createStatement()) {
+            stmt.execute("DELETE FROM PEOPLE");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        asyncRepo.close();
+        pool.close();
+        database.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAVES_PER_CALL)
+    public void syncSave() {
+        for (int i = 0; i < SAVES_PER_CALL; i++) {
+            repo.save(BenchmarkDatabase.newPerson(counter++));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAVES_PER_CALL)
+    public void asyncSave() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[SAVES_PER_CALL];
+
+        for (int i = 0; i < SAVES_PER_CALL; i++) {
+            futures[i] = asyncRepo.saveAsync(BenchmarkDatabase.newPerson(counter++));
+        }
+
+        CompletableFuture.allOf(futures).join();
+    }
+}
@@ -0,0 +1,100 @@
+package com.artsiomhanchar.peopledb.repository;
+
+import com.artsiomhanchar.peopledb.migration.MigrationRunner;
+import com.artsiomhanchar.peopledb.model.Address;
+import com.artsiomhanchar.peopledb.model.Person;
+import com.artsiomhanchar.peopledb.model.Region;
+import org.h2.jdbcx.JdbcDataSource;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory H2 database with the schema of the migrations, for the benchmarks.
+ * It's kept alive by its connection, close it to drop the database.
+ */
+final class BenchmarkDatabase implements AutoCloseable {
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+    private static final ZoneId ZONE = ZoneId.of("+0");
+
+    private final JdbcDataSource dataSource;
+    private final Connection connection;
+    private final List<Long> personIds = new ArrayList<>();
+
+    private BenchmarkDatabase(JdbcDataSource dataSource, Connection connection) {
+        this.dataSource = dataSource;
+        this.connection = connection;
+    }
+
+    /**
+     * @param datasetSize number of people with a home and a business address and two children each,
+     * the children are saved too, so PEOPLE gets three times as many rows
+     */
+    static BenchmarkDatabase create(int datasetSize) throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:benchmark" + COUNTER.incrementAndGet());
+
+        BenchmarkDatabase database = new BenchmarkDatabase(dataSource, dataSource.getConnection());
+
+        new MigrationRunner(database.connection).migrate();
+
+        List<Person> people = new ArrayList<>();
+
+        for (int i = 0; i < datasetSize; i++) {
+            Person person = newPerson(i);
+
+            person.setHomeAddress(newAddress(i, Region.WEST));
+            person.setBusinessAddress(newAddress(i, Region.EAST));
+            person.addChild(newPerson(i));
+            person.addChild(newPerson(i));
+            people.add(person);
+        }
+
+        new PeopleRepository(database.connection).saveGraph(people);
+        people.forEach(person -> database.personIds.add(person.getId()));
+
+        return database;
+    }
+
+    static Person newPerson(int i) {
+        Person person = new Person("John" + i, "Smith" + i % 100, ZonedDateTime.of(1950 + i % 50, 1 + i % 12, 1, 12, 0, 0, 0, ZONE));
+
+        person.setSalary(new BigDecimal(10_000 + i % 90_000));
+        person.setEmail("john" + i + "@example.com");
+
+        return person;
+    }
+
+    static Address newAddress(int i, Region region) {
+        return new Address(null, i + " Main St.", null, "Wala Wala", "WA", "90210", "United States", "Fulton County", region);
+    }
+
+    /**
+     * @return data source of the same database, e.g. for a connection pool
+     */
+    JdbcDataSource dataSource() {
+        return dataSource;
+    }
+
+    Connection connection() {
+        return connection;
+    }
+
+    /**
+     * @return IDs of the people with children and addresses, not of the children
+     */
+    List<Long> personIds() {
+        return personIds;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        connection.close();
+    }
+}
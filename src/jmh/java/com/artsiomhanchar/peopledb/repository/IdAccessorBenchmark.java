@@ -0,0 +1,98 @@
+package com.artsiomhanchar.peopledb.repository;
+
+import com.artsiomhanchar.peopledb.annotation.Id;
+import com.artsiomhanchar.peopledb.model.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the {@link Id} of an entity: through {@link IdAccessor} looked up per call and held on to like GrudRepository does,
+ * through a field getter method handle held in a field like IdAccessor used to, the reflective lookup GrudRepository
+ * used to do on every save and delete, and the getter and a plain field access for reference.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdAccessorBenchmark {
+    private final Person person = new Person(1L, "John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+    private final IdHolder holder = new IdHolder(1L);
+    private final IdAccessor personIdAccessor = IdAccessor.of(Person.class);
+    private MethodHandle idFieldGetter;
+
+    private static final class IdHolder {
+        private final Long id;
+
+        private IdHolder(Long id) {
+            this.id = id;
+        }
+    }
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        Field idField = Person.class.getDeclaredField("id");
+        idField.setAccessible(true);
+        idFieldGetter = MethodHandles.lookup().unreflectGetter(idField).asType(MethodType.methodType(Object.class, Object.class));
+    }
+
+    @Benchmark
+    public Long idAccessor() {
+        return IdAccessor.of(person.getClass()).getId(person);
+    }
+
+    @Benchmark
+    public Long idAccessorHeld() {
+        return personIdAccessor.getId(person);
+    }
+
+    @Benchmark
+    public Long methodHandle() throws Throwable {
+        return (Long) (Object) idFieldGetter.invokeExact((Object) person);
+    }
+
+    @Benchmark
+    public Long reflectiveLookup() {
+        return Arrays.stream(person.getClass().getDeclaredFields())
+                .filter(field -> field.isAnnotationPresent(Id.class))
+                .map(field -> {
+                    field.setAccessible(true);
+
+                    try {
+                        return (Long) field.get(person);
+                    } catch (IllegalAccessException e) {
+                        throw new RuntimeException(e);
+                    }
+                })
+                .findFirst()
+                .orElseThrow();
+    }
+
+    @Benchmark
+    public Long getter() {
+        return person.getId();
+    }
+
+    @Benchmark
+    public Long fieldAccess() {
+        return holder.id;
+    }
+}
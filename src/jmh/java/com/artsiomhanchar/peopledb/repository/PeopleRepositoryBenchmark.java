@@ -0,0 +1,119 @@
+package com.artsiomhanchar.peopledb.repository;
+
+import com.artsiomhanchar.peopledb.model.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CRUD paths of {@link PeopleRepository} against an in-memory H2 database of datasetSize families.
+ * Everything a benchmark writes is rolled back after each iteration, so the dataset keeps its size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PeopleRepositoryBenchmark {
+    private static final int DELETE_COUNT = 10;
+
+    @Param({"1000", "10000"})
+    private int datasetSize;
+
+    @Param({"100"})
+    private int batchSize;
+
+    private BenchmarkDatabase database;
+    private PeopleRepository repo;
+    private List<Long> personIds;
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void setUpDatabase() throws SQLException {
+        database = BenchmarkDatabase.create(datasetSize);
+        database.connection().setAutoCommit(false);
+        repo = new PeopleRepository(database.connection());
+        personIds = database.personIds();
+    }
+
+    @TearDown(Level.Iteration)
+    public void rollBack() throws SQLException {
+        database.connection().rollback();
+    }
+
+    @TearDown(Level.Trial)
+    public void closeDatabase() throws SQLException {
+        database.close();
+    }
+
+    @Benchmark
+    public Person save() {
+        return repo.save(BenchmarkDatabase.newPerson(counter++));
+    }
+
+    @Benchmark
+    public List<Person> saveAll() {
+        List<Person> people = new ArrayList<>(batchSize);
+
+        for (int i = 0; i < batchSize; i++) {
+            people.add(BenchmarkDatabase.newPerson(counter++));
+        }
+
+        return repo.saveAll(people, batchSize);
+    }
+
+    @Benchmark
+    public Optional<Person> findByIdWithChildrenAndAddresses() {
+        return repo.findById(personIds.get(ThreadLocalRandom.current().nextInt(personIds.size())));
+    }
+
+    @Benchmark
+    public List<Person> findAll() {
+        return repo.findAll();
+    }
+
+    @Benchmark
+    public long count() {
+        return repo.count();
+    }
+
+    @Benchmark
+    public long delete(ToDelete toDelete) {
+        return repo.delete(toDelete.people);
+    }
+
+    /**
+     * People saved before every call of {@link #delete(ToDelete)}, outside of the measured time.
+     */
+    @State(Scope.Thread)
+    public static class ToDelete {
+        private Person[] people;
+
+        @Setup(Level.Invocation)
+        public void save(PeopleRepositoryBenchmark benchmark) {
+            people = new Person[DELETE_COUNT];
+
+            for (int i = 0; i < DELETE_COUNT; i++) {
+                people[i] = benchmark.repo.save(BenchmarkDatabase.newPerson(benchmark.counter++));
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.artsiomhanchar.peopledb.repository;
+
+import com.artsiomhanchar.peopledb.model.Address;
+import com.artsiomhanchar.peopledb.model.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning one row into entities without the query: {@link PeopleRepository#extractEntityFromResultSet(ResultSet)}
+ * on a row of FIND_BY_ID_SQL, {@link AddressRepository#extractEntityFromResultSet(ResultSet)}, and resolving
+ * the column indices by label, which the row plans do once per result set shape.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowExtractionBenchmark {
+    private static final String FIND_ADDRESS_SQL = """
+            SELECT ID, STREET_ADDRESS, ADDRESS2, CITY, STATE, POSTCODE, COUNTY, REGION, COUNTRY
+            FROM ADDRESSES
+            WHERE ID = ?
+            """;
+
+    private BenchmarkDatabase database;
+    private PeopleRepository people;
+    private AddressRepository addresses;
+    private PreparedStatement personStatement;
+    private PreparedStatement addressStatement;
+    private ResultSet personRow;
+    private ResultSet addressRow;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        database = BenchmarkDatabase.create(1);
+        people = new PeopleRepository(database.connection());
+        addresses = new AddressRepository(database.connection());
+
+        Long personId = database.personIds().get(0);
+
+        personStatement = database.connection().prepareStatement(PeopleRepository.FIND_BY_ID_SQL, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+        personStatement.setLong(1, personId);
+        personRow = personStatement.executeQuery();
+        personRow.first();
+
+        addressStatement = database.connection().prepareStatement(FIND_ADDRESS_SQL, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+        addressStatement.setLong(1, people.findById(personId).orElseThrow().getHomeAddress().orElseThrow().id());
+        addressRow = addressStatement.executeQuery();
+        addressRow.first();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        personStatement.close();
+        addressStatement.close();
+        database.close();
+    }
+
+    @Benchmark
+    public Person extractPerson() throws SQLException {
+        return people.extractEntityFromResultSet(personRow);
+    }
+
+    @Benchmark
+    public Address extractAddress() throws SQLException {
+        return addresses.extractEntityFromResultSet(addressRow);
+    }
+
+    @Benchmark
+    public ResultSetShape resolveShape() throws SQLException {
+        return ResultSetShape.of(personRow);
+    }
+
+    @Benchmark
+    public String getValueByLabel() throws SQLException {
+        return ResultSetShape.getString(personRow, ResultSetShape.of(personRow).indexOf("HOME_A_CITY"));
+    }
+}
@@ -0,0 +1,25 @@
+package com.artsiomhanchar.peopledb.cache;
+
+import java.time.Duration;
+
+public record CacheMetrics(
+        long hitCount,
+        long missCount,
+        long loadCount,
+        Duration totalLoadTime,
+        long evictionCount,
+        long expirationCount,
+        long invalidationCount,
+        int size,
+        long weight
+) {
+    public double hitRatio() {
+        long requests = hitCount + missCount;
+
+        return requests == 0 ? 0 : (double) hitCount / requests;
+    }
+
+    public Duration averageLoadTime() {
+        return loadCount == 0 ? Duration.ZERO : totalLoadTime.dividedBy(loadCount);
+    }
+}
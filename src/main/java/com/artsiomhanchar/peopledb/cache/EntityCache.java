@@ -0,0 +1,301 @@
+package com.artsiomhanchar.peopledb.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Entities by ID shared between requests and threads, the second-level cache of a repository.
+ * <p>
+ * Bounded either by the number of entries or by their total weight (e.g. estimated bytes), least recently used
+ * entries are evicted first. With a TTL, entries older than that are treated as missing.
+ * <p>
+ * With {@link #setDependencyKeys(Function) dependency keys} the cache keeps a reverse index from what an entity
+ * refers to (e.g. the IDs of its children) to the cached entities, so {@link #invalidateDependents(Object)} doesn't
+ * go through every entry.
+ * <p>
+ * The cached instances are handed out as they are, every caller gets the same object. A repository hands
+ * copies of them to its callers and invalidates what it writes.
+ */
+public class EntityCache<T> {
+    private final long maxWeight;
+    private final ToLongFunction<? super T> weigher;
+    private final long ttlNanos;
+
+    private final LinkedHashMap<Long, Entry<T>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Object, Set<Long>> dependents = new HashMap<>();
+    private Function<? super T, ? extends Collection<?>> dependencyKeys = entity -> List.of();
+    private long weight;
+    // bumped by every invalidation, a load that raced with one isn't cached
+    private long generation;
+
+    private long hitCount;
+    private long missCount;
+    private long loadCount;
+    private long totalLoadNanos;
+    private long evictionCount;
+    private long expirationCount;
+    private long invalidationCount;
+
+    /**
+     * @param ttl how long an entry is served after it's loaded, zero for no expiration
+     */
+    public EntityCache(int maxEntries, Duration ttl) {
+        this(maxEntries, entity -> 1, ttl);
+    }
+
+    /**
+     * @param weigher estimated size of an entity, e.g. in bytes
+     */
+    public EntityCache(long maxWeight, ToLongFunction<? super T> weigher, Duration ttl) {
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException("Cache bound must be positive: " + maxWeight);
+        }
+
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /**
+     * Returns the cached entity or loads it. Nothing is cached if the loader finds nothing.
+     */
+    public Optional<T> get(Long id, Function<Long, Optional<T>> loader) {
+        long loadGeneration;
+
+        synchronized (this) {
+            T cached = getIfPresent(id);
+
+            if (cached != null) {
+                hitCount++;
+
+                return Optional.of(cached);
+            }
+
+            missCount++;
+            loadGeneration = generation;
+        }
+
+        long startedAt = System.nanoTime();
+        Optional<T> loaded = loader.apply(id);
+        long loadNanos = System.nanoTime() - startedAt;
+
+        synchronized (this) {
+            loadCount++;
+            totalLoadNanos += loadNanos;
+
+            if (loaded.isPresent() && loadGeneration == generation) {
+                put(id, loaded.get());
+            }
+        }
+
+        return loaded;
+    }
+
+    /**
+     * Multi-get variant of {@link #get(Long, Function)}: the IDs that aren't cached are loaded with one loader call.
+     * @return the entities found, by ID
+     */
+    public Map<Long, T> getAll(Collection<Long> ids, Function<List<Long>, Map<Long, T>> loader) {
+        Map<Long, T> found = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        long loadGeneration;
+
+        synchronized (this) {
+            for (Long id : ids) {
+                T cached = getIfPresent(id);
+
+                if (cached != null) {
+                    hitCount++;
+                    found.put(id, cached);
+                } else {
+                    missCount++;
+                    missing.add(id);
+                }
+            }
+
+            loadGeneration = generation;
+        }
+
+        if (missing.isEmpty()) {
+            return found;
+        }
+
+        long startedAt = System.nanoTime();
+        Map<Long, T> loaded = loader.apply(missing);
+        long loadNanos = System.nanoTime() - startedAt;
+
+        synchronized (this) {
+            loadCount++;
+            totalLoadNanos += loadNanos;
+
+            if (loadGeneration == generation) {
+                loaded.forEach(this::put);
+            }
+        }
+
+        found.putAll(loaded);
+
+        return found;
+    }
+
+    /**
+     * @param dependencyKeys what a cached entity refers to, e.g. the IDs of its children; keys of different
+     * kinds of references have to be told apart, e.g. by a record of the entity class and ID. Set it before
+     * anything is cached.
+     */
+    public synchronized void setDependencyKeys(Function<? super T, ? extends Collection<?>> dependencyKeys) {
+        this.dependencyKeys = dependencyKeys;
+    }
+
+    public synchronized void put(Long id, T entity) {
+        long entityWeight = weigher.applyAsLong(entity);
+
+        if (entityWeight > maxWeight) {
+            return;
+        }
+
+        Entry<T> entry = new Entry<>(entity, entityWeight, System.nanoTime(), List.copyOf(dependencyKeys.apply(entity)));
+        Entry<T> previous = entries.put(id, entry);
+
+        if (previous != null) {
+            unindex(id, previous);
+        }
+
+        weight += entityWeight;
+        entry.dependencyKeys().forEach(key -> dependents.computeIfAbsent(key, k -> new HashSet<>()).add(id));
+        evictOverweight();
+    }
+
+    public synchronized void invalidate(Long id) {
+        generation++;
+
+        Entry<T> removed = entries.remove(id);
+
+        if (removed != null) {
+            unindex(id, removed);
+            invalidationCount++;
+        }
+    }
+
+    /**
+     * Invalidates the entries whose entities refer to the key, as told by the dependency keys.
+     */
+    public synchronized void invalidateDependents(Object key) {
+        generation++;
+
+        Set<Long> ids = dependents.remove(key);
+
+        if (ids == null) {
+            return;
+        }
+
+        for (Long id : ids) {
+            Entry<T> removed = entries.remove(id);
+
+            if (removed != null) {
+                unindex(id, removed);
+                invalidationCount++;
+            }
+        }
+    }
+
+    /**
+     * Invalidates every entry whose entity matches, e.g. people living at an address that's changed.
+     */
+    public synchronized void invalidateIf(Predicate<? super T> predicate) {
+        generation++;
+
+        for (Iterator<Map.Entry<Long, Entry<T>>> iterator = entries.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<Long, Entry<T>> entry = iterator.next();
+
+            if (predicate.test(entry.getValue().entity())) {
+                iterator.remove();
+                unindex(entry.getKey(), entry.getValue());
+                invalidationCount++;
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        invalidationCount += entries.size();
+        entries.clear();
+        dependents.clear();
+        weight = 0;
+    }
+
+    public synchronized CacheMetrics getMetrics() {
+        return new CacheMetrics(
+                hitCount,
+                missCount,
+                loadCount,
+                Duration.ofNanos(totalLoadNanos),
+                evictionCount,
+                expirationCount,
+                invalidationCount,
+                entries.size(),
+                weight
+        );
+    }
+
+    private T getIfPresent(Long id) {
+        Entry<T> entry = entries.get(id);
+
+        if (entry == null) {
+            return null;
+        }
+
+        if (ttlNanos > 0 && System.nanoTime() - entry.loadedAt() > ttlNanos) {
+            entries.remove(id);
+            unindex(id, entry);
+            expirationCount++;
+
+            return null;
+        }
+
+        return entry.entity();
+    }
+
+    private void evictOverweight() {
+        Iterator<Map.Entry<Long, Entry<T>>> iterator = entries.entrySet().iterator();
+
+        while (weight > maxWeight && iterator.hasNext()) {
+            Map.Entry<Long, Entry<T>> eldest = iterator.next();
+
+            iterator.remove();
+            unindex(eldest.getKey(), eldest.getValue());
+            evictionCount++;
+        }
+    }
+
+    private void unindex(Long id, Entry<T> entry) {
+        weight -= entry.weight();
+
+        for (Object key : entry.dependencyKeys()) {
+            Set<Long> ids = dependents.get(key);
+
+            if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                dependents.remove(key);
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("EntityCache{size=%d, weight=%d/%d, %s}", entries.size(), weight, maxWeight, getMetrics());
+    }
+
+    private record Entry<T>(T entity, long weight, long loadedAt, List<?> dependencyKeys) { }
+}
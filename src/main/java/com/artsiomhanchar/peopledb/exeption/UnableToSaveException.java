@@ -4,4 +4,8 @@ public class UnableToSaveException extends RuntimeException {
     public UnableToSaveException(String message) {
         super(message);
     }
+
+    public UnableToSaveException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
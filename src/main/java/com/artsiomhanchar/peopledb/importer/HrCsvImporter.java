@@ -0,0 +1,394 @@
+package com.artsiomhanchar.peopledb.importer;
+
+import com.artsiomhanchar.peopledb.model.Person;
+import com.artsiomhanchar.peopledb.repository.PeopleRepository;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Bulk import of the Hr5m CSV dataset into PEOPLE.
+ * <p>
+ * {@link #importFile(Path)} is a staged pipeline: a reader thread cuts the file into chunks of lines,
+ * worker threads convert them into {@link Person}s, and the calling thread saves them in order with
+ * {@link PeopleRepository#saveAll(Iterable, int)}, committing every chunk together with its checkpoint.
+ * The stages are connected by bounded queues, and the reader can't get more than a fixed number of chunks ahead
+ * of the writer, so a slow DB or a slow chunk slows the reader down instead of filling the heap.
+ * <p>
+ * {@link #importWithCsvRead(Path)} is the fast path: one INSERT ... SELECT over H2's CSVREAD,
+ * no Java objects at all, but also no progress and no resume - it's one transaction.
+ */
+public class HrCsvImporter {
+    public static final int DEFAULT_CHUNK_SIZE = 5_000;
+
+    private static final DateTimeFormatter DOB_FORMAT = DateTimeFormatter.ofPattern("M/d/yyyy", Locale.ENGLISH);
+    private static final DateTimeFormatter TOB_FORMAT = DateTimeFormatter.ofPattern("hh:mm:ss a", Locale.ENGLISH);
+    private static final ZoneId ZONE = ZoneId.of("+0");
+
+    private static final int FIRST_NAME = 2;
+    private static final int LAST_NAME = 4;
+    private static final int EMAIL = 6;
+    private static final int DATE_OF_BIRTH = 10;
+    private static final int TIME_OF_BIRTH = 11;
+    private static final int SALARY = 25;
+
+    // CSVREAD takes the column names from the header, plain names like "Salary" are upper-cased by H2
+    private static final String CSV_READ_SQL = """
+            INSERT INTO PEOPLE (FIRST_NAME, LAST_NAME, DOB, SALARY, EMAIL, DELETE_FLAG)
+            SELECT "First Name", "Last Name",
+            PARSEDATETIME("Date of Birth" || ' ' || "Time of Birth", 'M/d/yyyy hh:mm:ss a', 'en', 'UTC'),
+            CAST(SALARY AS NUMERIC), "E Mail", FALSE
+            FROM CSVREAD('%s', NULL, 'charset=UTF-8')
+            """;
+
+    private record LineChunk(long sequence, long lastLine, List<String> lines) { }
+
+    private record PersonChunk(long sequence, long lastLine, List<Person> people, List<RejectedLine> rejectedLines) { }
+
+    private static final LineChunk END_OF_LINES = new LineChunk(-1, -1, List.of());
+    private static final PersonChunk WORKER_DONE = new PersonChunk(-1, -1, List.of(), List.of());
+
+    private final Connection connection;
+    private final PeopleRepository repository;
+
+    private int workerCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int queueCapacity = 8;
+    private ImportCheckpoint checkpoint;
+    private Consumer<ImportProgress> progressListener = progress -> { };
+
+    public HrCsvImporter(Connection connection) {
+        this.connection = connection;
+        this.repository = new PeopleRepository(connection);
+    }
+
+    public void setWorkerCount(int workerCount) {
+        this.workerCount = requirePositive(workerCount, "Worker count");
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = requirePositive(chunkSize, "Chunk size");
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = requirePositive(queueCapacity, "Queue capacity");
+    }
+
+    /**
+     * With a checkpoint the import skips the lines committed by a previous run and records its own progress,
+     * in the same transaction as each chunk.
+     */
+    public void setCheckpoint(ImportCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * @param progressListener called after every committed chunk, with the lines of the chunk that were rejected;
+     * nothing is reported by default
+     */
+    public void setProgressListener(Consumer<ImportProgress> progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    public ImportProgress importFile(Path csv) throws IOException, SQLException {
+        long startedAt = System.nanoTime();
+        long alreadyCommitted = checkpoint != null ? checkpoint.load(connection) : 0;
+
+        BlockingQueue<LineChunk> lineQueue = new ArrayBlockingQueue<>(queueCapacity);
+        // every chunk between the reader and the writer holds a permit, so the chunks the writer
+        // keeps back for the order can't pile up behind a slow one
+        Semaphore chunkPermits = new Semaphore(2 * queueCapacity + workerCount);
+        BlockingQueue<PersonChunk> personQueue = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount + 1, runnable -> {
+            Thread thread = new Thread(runnable, "hr-csv-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        boolean autoCommit = connection.getAutoCommit();
+        boolean commitPerBatch = repository.isCommitPerBatch();
+        boolean completed = false;
+
+        try {
+            connection.setAutoCommit(false);
+            // the writer commits a chunk together with its checkpoint
+            repository.setCommitPerBatch(false);
+
+            executor.execute(() -> readLines(csv, alreadyCommitted, lineQueue, chunkPermits, failure));
+
+            for (int i = 0; i < workerCount; i++) {
+                executor.execute(() -> convertLines(lineQueue, personQueue, failure));
+            }
+
+            ImportProgress progress = writePeople(personQueue, chunkPermits, alreadyCommitted, startedAt, failure);
+            completed = true;
+
+            return progress;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Import interrupted", e);
+        } finally {
+            executor.shutdownNow();
+            repository.setCommitPerBatch(commitPerBatch);
+
+            try {
+                if (!completed) {
+                    // turning auto-commit back on would commit the rows of a chunk saved halfway, without its checkpoint
+                    connection.rollback();
+                }
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    public ImportProgress importWithCsvRead(Path csv) throws SQLException {
+        long startedAt = System.nanoTime();
+        String fileName = csv.toAbsolutePath().toString().replace("'", "''");
+
+        try (Statement stmt = connection.createStatement()) {
+            int importedRows = stmt.executeUpdate(String.format(CSV_READ_SQL, fileName));
+
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+
+            ImportProgress progress = new ImportProgress(importedRows, 0, importedRows, Duration.ofNanos(System.nanoTime() - startedAt), List.of());
+            progressListener.accept(progress);
+
+            return progress;
+        }
+    }
+
+    static Person toPerson(String line) {
+        List<String> fields = splitFields(line);
+
+        LocalDate dob = LocalDate.parse(fields.get(DATE_OF_BIRTH), DOB_FORMAT);
+        LocalTime tob = LocalTime.parse(fields.get(TIME_OF_BIRTH), TOB_FORMAT);
+
+        Person person = new Person(fields.get(FIRST_NAME), fields.get(LAST_NAME), ZonedDateTime.of(LocalDateTime.of(dob, tob), ZONE));
+
+        person.setSalary(new BigDecimal(fields.get(SALARY)));
+        person.setEmail(fields.get(EMAIL));
+
+        return person;
+    }
+
+    /**
+     * Splits a CSV line into its fields: a field in double quotes may contain commas, "" stands for a quote in it.
+     * A quoted field can't span lines, the reader cuts the file by lines.
+     * @throws IllegalArgumentException if a quoted field isn't closed
+     */
+    static List<String> splitFields(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+
+        if (quoted) {
+            throw new IllegalArgumentException("Quoted field isn't closed: " + line);
+        }
+
+        fields.add(field.toString());
+
+        return fields;
+    }
+
+    private void readLines(Path csv, long alreadyCommitted, BlockingQueue<LineChunk> lineQueue, Semaphore chunkPermits,
+                           AtomicReference<Exception> failure) {
+        try (BufferedReader reader = Files.newBufferedReader(csv)) {
+            reader.readLine(); // header
+
+            long lineNumber = 0;
+            long sequence = 0;
+            List<String> lines = new ArrayList<>(chunkSize);
+            String line;
+
+            while (lineNumber < alreadyCommitted && reader.readLine() != null) {
+                lineNumber++;
+            }
+
+            while (failure.get() == null && (line = reader.readLine()) != null) {
+                lines.add(line);
+                lineNumber++;
+
+                if (lines.size() == chunkSize) {
+                    chunkPermits.acquire();
+                    lineQueue.put(new LineChunk(sequence++, lineNumber, lines));
+                    lines = new ArrayList<>(chunkSize);
+                }
+            }
+
+            if (!lines.isEmpty() && failure.get() == null) {
+                chunkPermits.acquire();
+                lineQueue.put(new LineChunk(sequence, lineNumber, lines));
+            }
+        } catch (IOException e) {
+            failure.compareAndSet(null, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        try {
+            for (int i = 0; i < workerCount; i++) {
+                lineQueue.put(END_OF_LINES);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void convertLines(BlockingQueue<LineChunk> lineQueue, BlockingQueue<PersonChunk> personQueue, AtomicReference<Exception> failure) {
+        try {
+            LineChunk chunk;
+
+            while ((chunk = lineQueue.take()) != END_OF_LINES) {
+                List<Person> people = new ArrayList<>(chunk.lines().size());
+                List<RejectedLine> rejectedLines = new ArrayList<>();
+                long lineNumber = chunk.lastLine() - chunk.lines().size();
+
+                for (String line : chunk.lines()) {
+                    lineNumber++;
+
+                    try {
+                        people.add(toPerson(line));
+                    } catch (RuntimeException e) {
+                        rejectedLines.add(new RejectedLine(lineNumber, line, e));
+                    }
+                }
+
+                personQueue.put(new PersonChunk(chunk.sequence(), chunk.lastLine(), people, rejectedLines));
+            }
+
+            personQueue.put(WORKER_DONE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+
+            try {
+                personQueue.put(WORKER_DONE);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private ImportProgress writePeople(BlockingQueue<PersonChunk> personQueue, Semaphore chunkPermits, long alreadyCommitted,
+                                       long startedAt, AtomicReference<Exception> failure) throws InterruptedException, SQLException {
+        // workers finish chunks out of order, they're written in file order so the checkpoint is a single line number
+        Map<Long, PersonChunk> pendingChunks = new HashMap<>();
+        long nextSequence = 0;
+        int finishedWorkers = 0;
+
+        long importedRows = 0;
+        long rejectedRows = 0;
+        long committedLines = alreadyCommitted;
+
+        while (finishedWorkers < workerCount) {
+            PersonChunk chunk = personQueue.take();
+            boolean failed = failure.get() != null;
+
+            if (failed) {
+                // nothing more is written, the chunks are only drained so the reader and the workers can finish
+                chunkPermits.release(pendingChunks.size() + (chunk == WORKER_DONE ? 0 : 1));
+                pendingChunks.clear();
+            }
+
+            if (chunk == WORKER_DONE) {
+                finishedWorkers++;
+                continue;
+            }
+
+            if (failed) {
+                continue;
+            }
+
+            pendingChunks.put(chunk.sequence(), chunk);
+
+            while ((chunk = pendingChunks.remove(nextSequence)) != null) {
+                if (!chunk.people().isEmpty()) {
+                    repository.saveAll(chunk.people(), chunk.people().size());
+                }
+
+                importedRows += chunk.people().size();
+                rejectedRows += chunk.rejectedLines().size();
+                committedLines = chunk.lastLine();
+                nextSequence++;
+
+                if (checkpoint != null) {
+                    checkpoint.save(connection, committedLines);
+                }
+
+                connection.commit();
+                chunkPermits.release();
+
+                progressListener.accept(new ImportProgress(importedRows, rejectedRows, committedLines,
+                        Duration.ofNanos(System.nanoTime() - startedAt), chunk.rejectedLines()));
+            }
+        }
+
+        if (failure.get() != null) {
+            throw new IllegalStateException("Import failed after line " + committedLines, failure.get());
+        }
+
+        return new ImportProgress(importedRows, rejectedRows, committedLines, Duration.ofNanos(System.nanoTime() - startedAt), List.of());
+    }
+
+    private static int requirePositive(int value, String name) {
+        if (value < 1) {
+            throw new IllegalArgumentException(name + " must be positive: " + value);
+        }
+
+        return value;
+    }
+}
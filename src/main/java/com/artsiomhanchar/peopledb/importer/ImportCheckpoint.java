@@ -0,0 +1,64 @@
+package com.artsiomhanchar.peopledb.importer;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Number of CSV data lines (header excluded) that are already committed, kept in the IMPORT_CHECKPOINT table
+ * under the name of the import. It's written on the importer's connection in the transaction of each chunk,
+ * so a chunk and the checkpoint after it are committed together, and a resumed import never saves a row twice.
+ */
+public class ImportCheckpoint {
+    private static final String LOAD_SQL = """
+            SELECT COMMITTED_LINES FROM IMPORT_CHECKPOINT WHERE NAME = ?
+            """;
+    private static final String SAVE_SQL = """
+            MERGE INTO IMPORT_CHECKPOINT (NAME, COMMITTED_LINES) KEY (NAME) VALUES (?, ?)
+            """;
+    private static final String CLEAR_SQL = """
+            DELETE FROM IMPORT_CHECKPOINT WHERE NAME = ?
+            """;
+
+    private final String name;
+
+    /**
+     * @param name of the import, e.g. the name of the file, one checkpoint is kept per name
+     */
+    public ImportCheckpoint(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long load(Connection connection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(LOAD_SQL)) {
+            ps.setString(1, name);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Doesn't commit, the caller commits it together with the rows it counts.
+     */
+    public void save(Connection connection, long committedLines) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(SAVE_SQL)) {
+            ps.setString(1, name);
+            ps.setLong(2, committedLines);
+            ps.executeUpdate();
+        }
+    }
+
+    public void clear(Connection connection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(CLEAR_SQL)) {
+            ps.setString(1, name);
+            ps.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.artsiomhanchar.peopledb.importer;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Snapshot of an import: rows saved so far, rows skipped because they couldn't be parsed,
+ * the CSV line the import is committed up to and how long it's been running.
+ * @param rejectedLines the lines skipped in the chunk just committed, with why; empty in the result of a whole import
+ */
+public record ImportProgress(long importedRows, long rejectedRows, long committedLines, Duration elapsed, List<RejectedLine> rejectedLines) {
+
+    public double rowsPerSecond() {
+        long millis = elapsed.toMillis();
+
+        return millis == 0 ? 0 : importedRows * 1000.0 / millis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Imported %d rows (%d rejected) up to line %d in %s, %.0f rows/sec",
+                importedRows, rejectedRows, committedLines, elapsed, rowsPerSecond());
+    }
+}
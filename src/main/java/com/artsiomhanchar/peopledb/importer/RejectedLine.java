@@ -0,0 +1,7 @@
+package com.artsiomhanchar.peopledb.importer;
+
+/**
+ * A CSV line that couldn't be turned into a person and was skipped.
+ * @param lineNumber number of the line in the file, the header not counted
+ */
+public record RejectedLine(long lineNumber, String line, RuntimeException cause) { }
@@ -0,0 +1,7 @@
+package com.artsiomhanchar.peopledb.migration;
+
+/**
+ * One versioned script, e.g. V1__baseline.sql.
+ * @param checksum SHA-256 of the script, stored in SCHEMA_HISTORY to notice a script changed after it was applied
+ */
+public record Migration(int version, String description, String script, String checksum) { }
@@ -0,0 +1,201 @@
+package com.artsiomhanchar.peopledb.migration;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Brings a database up to the schema the repositories expect, call {@link #migrate()} at startup.
+ * <p>
+ * The scripts are read from the classpath, {@value #DEFAULT_LOCATION} by default, in the order listed in its
+ * migrations.txt. Every applied one is recorded in SCHEMA_HISTORY with its checksum, so running again only
+ * applies the new ones, and a script edited after it was applied fails the run instead of being silently skipped.
+ * <p>
+ * H2 commits DDL right away, so a script that fails halfway isn't rolled back. It isn't recorded either,
+ * that's why scripts are written with IF NOT EXISTS and can simply run again once fixed.
+ */
+public class MigrationRunner {
+    public static final String DEFAULT_LOCATION = "db/migration";
+
+    private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+
+    private static final String CREATE_HISTORY_SQL = """
+            CREATE TABLE IF NOT EXISTS SCHEMA_HISTORY (VERSION INT PRIMARY KEY, DESCRIPTION CHARACTER VARYING(255), CHECKSUM CHARACTER VARYING(64) NOT NULL, INSTALLED_ON TIMESTAMP NOT NULL, EXECUTION_TIME BIGINT NOT NULL)
+            """;
+    private static final String FIND_APPLIED_SQL = """
+            SELECT VERSION, CHECKSUM FROM SCHEMA_HISTORY
+            """;
+    private static final String INSERT_HISTORY_SQL = """
+            INSERT INTO SCHEMA_HISTORY (VERSION, DESCRIPTION, CHECKSUM, INSTALLED_ON, EXECUTION_TIME) VALUES (?, ?, ?, ?, ?)
+            """;
+
+    private final Connection connection;
+    private String location = DEFAULT_LOCATION;
+
+    public MigrationRunner(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * @return the migrations applied by this call, empty if the schema was up to date
+     * @throws IllegalStateException if an applied script was changed or is missing
+     */
+    public List<Migration> migrate() {
+        List<Migration> migrations = load();
+        List<Migration> applied = new ArrayList<>();
+
+        try {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(true);
+
+            try {
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute(CREATE_HISTORY_SQL);
+                }
+
+                Map<Integer, String> checksums = findApplied();
+
+                for (Migration migration : migrations) {
+                    String checksum = checksums.remove(migration.version());
+
+                    if (checksum == null) {
+                        apply(migration);
+                        applied.add(migration);
+                    } else if (!checksum.equals(migration.checksum())) {
+                        throw new IllegalStateException("Migration V" + migration.version() + " was changed after it was applied");
+                    }
+                }
+
+                if (!checksums.isEmpty()) {
+                    throw new IllegalStateException("Applied migrations not found in " + location + ": " + checksums.keySet());
+                }
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        return applied;
+    }
+
+    /**
+     * @return the scripts of {@link #setLocation(String) the location}, in version order
+     */
+    public List<Migration> load() {
+        List<Migration> migrations = new ArrayList<>();
+
+        List<String> fileNames = read(location + "/migrations.txt").lines()
+                .map(String::strip)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .toList();
+
+        for (String fileName : fileNames) {
+            Matcher matcher = FILE_NAME.matcher(fileName);
+
+            if (!matcher.matches()) {
+                throw new IllegalStateException("Migration name must look like V1__description.sql: " + fileName);
+            }
+
+            int version = Integer.parseInt(matcher.group(1));
+
+            if (!migrations.isEmpty() && migrations.get(migrations.size() - 1).version() >= version) {
+                throw new IllegalStateException("Migrations must be listed in ascending version order: " + fileName);
+            }
+
+            String script = read(location + "/" + fileName);
+
+            migrations.add(new Migration(version, matcher.group(2).replace('_', ' '), script, checksum(script)));
+        }
+
+        return migrations;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    private Map<Integer, String> findApplied() throws SQLException {
+        Map<Integer, String> checksums = new HashMap<>();
+
+        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(FIND_APPLIED_SQL)) {
+            while (rs.next()) {
+                checksums.put(rs.getInt("VERSION"), rs.getString("CHECKSUM"));
+            }
+        }
+
+        return checksums;
+    }
+
+    private void apply(Migration migration) throws SQLException {
+        long start = System.nanoTime();
+
+        try (Statement stmt = connection.createStatement()) {
+            // H2 runs all the statements of the script in one call
+            stmt.execute(migration.script());
+        } catch (SQLException e) {
+            throw new RuntimeException("Migration V" + migration.version() + " failed", e);
+        }
+
+        try (PreparedStatement ps = connection.prepareStatement(INSERT_HISTORY_SQL)) {
+            ps.setInt(1, migration.version());
+            ps.setString(2, migration.description());
+            ps.setString(3, migration.checksum());
+            ps.setTimestamp(4, Timestamp.from(Instant.now()));
+            ps.setLong(5, (System.nanoTime() - start) / 1_000_000);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * @return the resource with its lines joined by \n, so a checkout with other line endings has the same checksum
+     */
+    private String read(String resource) {
+        InputStream in = MigrationRunner.class.getClassLoader().getResourceAsStream(resource);
+
+        if (in == null) {
+            throw new IllegalStateException("Migration resource not found: " + resource);
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            return reader.lines().collect(Collectors.joining("\n"));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static String checksum(String script) {
+        MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return HexFormat.of().formatHex(digest.digest(script.getBytes(StandardCharsets.UTF_8)));
+    }
+}
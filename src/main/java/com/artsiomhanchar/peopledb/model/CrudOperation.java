@@ -4,8 +4,15 @@ public enum CrudOperation {
     SAVE,
     UPDATE,
     FIND_BY_ID,
+    FIND_ALL_BY_ID,
     FIND_ALL,
+    STREAM_ALL,
+    FIND_PAGE,
+    FIND_BY_CRITERIA,
     DELETE_ONE,
     DELETE_MANY,
+    SOFT_DELETE_ONE,
+    SOFT_DELETE_MANY,
+    FIND_DELETED_IDS,
     COUNT;
 }
@@ -5,6 +5,7 @@ import com.artsiomhanchar.peopledb.annotation.Id;
 import java.math.BigDecimal;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Optional;
@@ -24,6 +25,9 @@ public class Person implements Entity {
 
     private Set<Person> children = new HashSet<>();
     private Optional<Person> parent = Optional.empty();
+    private Runnable associationLoader;
+    private boolean homeAddressSet;
+    private boolean businessAddressSet;
 
     public Person(Long id, String firstName, String lastName, ZonedDateTime dob) {
         this(firstName, lastName, dob);
@@ -117,19 +121,70 @@ public class Person implements Entity {
         return Objects.hash(id, firstName, lastName, dob);
     }
 
+    /**
+     * Loads the children and addresses on first access of a getter, for people read without them.
+     * The loader hands them over with {@link #setLoadedAssociations(Address, Address, Collection)}.
+     * Setting an address or adding a child afterwards doesn't load anything.
+     * <p>
+     * Like the rest of the class, loading isn't thread-safe: a person with a loader is meant for one thread.
+     */
+    public void setAssociationLoader(Runnable associationLoader) {
+        this.associationLoader = associationLoader;
+
+        if (associationLoader != null) {
+            // what the finder set while reading the person isn't a change to keep over the loaded addresses
+            homeAddressSet = false;
+            businessAddressSet = false;
+        }
+    }
+
+    public boolean isAssociationsLoaded() {
+        return associationLoader == null;
+    }
+
+    private void loadAssociations() {
+        if (associationLoader != null) {
+            Runnable loader = associationLoader;
+            associationLoader = null;
+
+            loader.run();
+        }
+    }
+
+    /**
+     * Sets what a loader read. An address set before it ran is kept, children added before are kept next to the loaded ones.
+     */
+    public void setLoadedAssociations(Address homeAddress, Address businessAddress, Collection<Person> children) {
+        if (!homeAddressSet) {
+            this.homeAddress = Optional.ofNullable(homeAddress);
+        }
+
+        if (!businessAddressSet) {
+            this.businessAddress = Optional.ofNullable(businessAddress);
+        }
+
+        children.forEach(this::addChild);
+    }
+
     public void setHomeAddress(Address homeAddress) {
         this.homeAddress = Optional.ofNullable(homeAddress);
+        homeAddressSet = true;
     }
 
     public Optional<Address> getHomeAddress() {
+        loadAssociations();
+
         return homeAddress;
     }
 
     public void setBusinessAddress(Address businessAddress) {
         this.businessAddress = Optional.ofNullable(businessAddress);
+        businessAddressSet = true;
     }
 
     public Optional<Address> getBusinessAddress() {
+        loadAssociations();
+
         return businessAddress;
     }
 
@@ -147,6 +202,8 @@ public class Person implements Entity {
     }
 
     public Set<Person> getChildren() {
+        loadAssociations();
+
         return children;
     }
 }
@@ -0,0 +1,8 @@
+package com.artsiomhanchar.peopledb.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Read-only projection of a person for lists: just the columns a list shows, no associations.
+ */
+public record PersonSummary(long id, String firstName, String lastName, BigDecimal salary) { }
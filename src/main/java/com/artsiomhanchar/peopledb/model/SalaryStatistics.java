@@ -0,0 +1,13 @@
+package com.artsiomhanchar.peopledb.model;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Salary aggregates of one group of people, computed by the database.
+ * @param group values the people are grouped by, in the order of the groupings asked for; null for people without one,
+ * e.g. without a home address
+ * @param count number of people in the group
+ * @param total sum of the salaries, null if no one in the group has one (the same for the others)
+ */
+public record SalaryStatistics(List<String> group, long count, BigDecimal total, BigDecimal average, BigDecimal min, BigDecimal max) { }
@@ -0,0 +1,23 @@
+package com.artsiomhanchar.peopledb.pool;
+
+import java.sql.Connection;
+
+/**
+ * A connection borrowed for one repository operation, together with the statement cache of that connection.
+ * Closing the lease gives the connection back, it doesn't close the connection itself.
+ */
+public interface ConnectionLease extends AutoCloseable {
+    Connection connection();
+
+    StatementCache statementCache();
+
+    /**
+     * To be called by whoever commits or rolls back the connection directly, e.g. a unit of work,
+     * runs the {@link ConnectionProvider#afterTransaction(Runnable)} actions, and the
+     * {@link ConnectionProvider#afterCommit(Runnable)} ones if it was committed.
+     */
+    default void transactionEnded(boolean committed) { }
+
+    @Override
+    void close();
+}
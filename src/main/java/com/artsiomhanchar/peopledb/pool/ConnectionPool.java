@@ -0,0 +1,450 @@
+package com.artsiomhanchar.peopledb.pool;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Lightweight pool of connections taken from a {@link DataSource}, e.g. H2's JdbcDataSource.
+ * <p>
+ * At most maxSize connections are borrowed at a time; callers above that wait up to the borrow timeout.
+ * A connection is bound to the borrowing thread until it's given back, so nested operations and
+ * {@link #inTransaction(Callable)} work on one connection. Every pooled connection keeps its own
+ * {@link StatementCache}, statements are reused across borrows.
+ * <p>
+ * With a leak detection threshold, connections held longer than that are reported once, with the stack trace of the borrower.
+ * Leaks and errors that can't be thrown to a caller, e.g. a connection failing to reset when it's given back,
+ * go to the error listener.
+ */
+public class ConnectionPool implements ConnectionProvider, AutoCloseable {
+    public static final Duration DEFAULT_BORROW_TIMEOUT = Duration.ofSeconds(30);
+
+    private final DataSource dataSource;
+    private final int maxSize;
+    private final Duration borrowTimeout;
+    private final Duration leakDetectionThreshold;
+    private final Consumer<Throwable> errorListener;
+
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idleConnections = new ConcurrentLinkedDeque<>();
+    private final Set<PooledConnection> borrowedConnections = ConcurrentHashMap.newKeySet();
+    private final Set<PooledConnection> openConnections = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<PooledConnection> currentConnection = new ThreadLocal<>();
+    private final ScheduledExecutorService leakDetector;
+
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicInteger leakCount = new AtomicInteger();
+
+    private volatile boolean closed;
+
+    public ConnectionPool(DataSource dataSource, int maxSize) {
+        this(dataSource, maxSize, DEFAULT_BORROW_TIMEOUT, Duration.ZERO);
+    }
+
+    /**
+     * Leaks and errors aren't reported anywhere but in the leak count of the metrics.
+     * @param leakDetectionThreshold how long a connection can be held before it's reported as leaked, zero turns detection off
+     */
+    public ConnectionPool(DataSource dataSource, int maxSize, Duration borrowTimeout, Duration leakDetectionThreshold) {
+        this(dataSource, maxSize, borrowTimeout, leakDetectionThreshold, e -> { });
+    }
+
+    /**
+     * @param errorListener called with a leak, with the stack trace of the borrower as the cause, or with what
+     * giving back or closing a connection failed with, e.g. to log it. It may be called from the leak detector thread.
+     */
+    public ConnectionPool(DataSource dataSource, int maxSize, Duration borrowTimeout, Duration leakDetectionThreshold,
+                          Consumer<Throwable> errorListener) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be positive: " + maxSize);
+        }
+
+        this.dataSource = dataSource;
+        this.maxSize = maxSize;
+        this.borrowTimeout = borrowTimeout;
+        this.leakDetectionThreshold = leakDetectionThreshold;
+        this.errorListener = errorListener;
+        this.permits = new Semaphore(maxSize, true);
+
+        if (leakDetectionThreshold.isZero()) {
+            this.leakDetector = null;
+        } else {
+            this.leakDetector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "connection-pool-leak-detector");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            long periodMillis = Math.max(1, leakDetectionThreshold.toMillis() / 2);
+            leakDetector.scheduleAtFixedRate(this::detectLeaks, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public ConnectionLease acquire() throws SQLException {
+        PooledConnection current = currentConnection.get();
+
+        if (current != null && current.owner == Thread.currentThread()) {
+            current.depth++;
+            current.statementCache.beginOperation();
+
+            return current;
+        }
+
+        // a binding left behind by a lease that another thread gave back, e.g. by closing a stream
+        currentConnection.remove();
+
+        PooledConnection connection = borrow();
+        connection.depth = 1;
+        connection.statementCache.beginOperation();
+        currentConnection.set(connection);
+
+        return connection;
+    }
+
+    @Override
+    public boolean isInTransaction() throws SQLException {
+        PooledConnection current = currentConnection.get();
+
+        return current != null && current.owner == Thread.currentThread() && !current.connection.getAutoCommit();
+    }
+
+    /**
+     * The actions are run when the outermost {@link #inTransaction(Callable)} or the unit of work ends,
+     * at the latest when the connection is given back.
+     */
+    @Override
+    public void afterTransaction(Runnable action) throws SQLException {
+        PooledConnection current = currentConnection.get();
+
+        if (current != null && current.owner == Thread.currentThread() && !current.connection.getAutoCommit()) {
+            current.afterTransaction(action);
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * The actions are run when the outermost {@link #inTransaction(Callable)} or the unit of work commits.
+     * The ones added in a nested inTransaction() that's rolled back to its savepoint are dropped with it.
+     */
+    @Override
+    public void afterCommit(Runnable action) throws SQLException {
+        PooledConnection current = currentConnection.get();
+
+        if (current != null && current.owner == Thread.currentThread() && !current.connection.getAutoCommit()) {
+            current.afterCommit(action);
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Runs the work in one transaction on one connection. Repositories using this pool on the same thread
+     * take part in it. Commits if the work completes, rolls back if it throws.
+     * <p>
+     * Called while the thread's connection is already in a transaction, e.g. nested in another inTransaction(),
+     * the work joins that transaction: nothing is committed, the outermost level does it. If the work throws,
+     * only what it did is rolled back, to a savepoint set before it.
+     */
+    public <R> R inTransaction(Callable<R> work) throws SQLException {
+        try (ConnectionLease lease = acquire()) {
+            PooledConnection pooledConnection = (PooledConnection) lease;
+            Connection connection = lease.connection();
+            boolean autoCommit = connection.getAutoCommit();
+            boolean outermost = pooledConnection.transactionDepth == 0 && autoCommit;
+            Savepoint savepoint = outermost ? null : connection.setSavepoint();
+            int afterCommitMark = pooledConnection.afterCommitMark();
+            boolean committed = false;
+
+            if (outermost) {
+                connection.setAutoCommit(false);
+            }
+
+            pooledConnection.transactionDepth++;
+
+            try {
+                R result = work.call();
+
+                if (outermost) {
+                    connection.commit();
+                    committed = true;
+                } else {
+                    connection.releaseSavepoint(savepoint);
+                }
+
+                return result;
+            } catch (Exception e) {
+                if (outermost) {
+                    connection.rollback();
+                } else {
+                    connection.rollback(savepoint);
+                    pooledConnection.dropAfterCommit(afterCommitMark);
+                }
+
+                if (e instanceof SQLException sqlException) {
+                    throw sqlException;
+                }
+
+                if (e instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+
+                throw new RuntimeException(e);
+            } finally {
+                pooledConnection.transactionDepth--;
+
+                if (outermost) {
+                    connection.setAutoCommit(autoCommit);
+                    pooledConnection.transactionEnded(committed);
+                }
+            }
+        }
+    }
+
+    public PoolMetrics getMetrics() {
+        long borrows = borrowCount.sum();
+        long hits = 0;
+        long misses = 0;
+
+        for (PooledConnection connection : openConnections) {
+            hits += connection.statementCache.getHitCount();
+            misses += connection.statementCache.getMissCount();
+        }
+
+        return new PoolMetrics(
+                maxSize,
+                openConnections.size(),
+                borrowedConnections.size(),
+                idleConnections.size(),
+                borrows,
+                timeoutCount.sum(),
+                Duration.ofNanos(borrows == 0 ? 0 : totalWaitNanos.sum() / borrows),
+                Duration.ofNanos(maxWaitNanos.get()),
+                leakCount.get(),
+                hits,
+                misses
+        );
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+
+        if (leakDetector != null) {
+            leakDetector.shutdownNow();
+        }
+
+        PooledConnection connection;
+
+        while ((connection = idleConnections.pollFirst()) != null) {
+            connection.closePhysical();
+        }
+    }
+
+    private PooledConnection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        long startedAt = System.nanoTime();
+
+        try {
+            if (!permits.tryAcquire(borrowTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                timeoutCount.increment();
+                throw new SQLException(String.format("No connection available in %s, all %d are in use", borrowTimeout, maxSize));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+
+        long waitNanos = System.nanoTime() - startedAt;
+        borrowCount.increment();
+        totalWaitNanos.add(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+
+        try {
+            PooledConnection connection = takeIdleConnection();
+
+            connection.owner = Thread.currentThread();
+            connection.borrowedAt = System.nanoTime();
+            connection.borrowedBy = leakDetector != null ? new Throwable("Connection borrowed by " + Thread.currentThread().getName()) : null;
+            connection.leakReported = false;
+            borrowedConnections.add(connection);
+
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private PooledConnection takeIdleConnection() throws SQLException {
+        PooledConnection connection;
+
+        // most recently used first, its statements are the warmest
+        while ((connection = idleConnections.pollFirst()) != null) {
+            if (!connection.connection.isClosed()) {
+                return connection;
+            }
+
+            connection.closePhysical();
+        }
+
+        connection = new PooledConnection(dataSource.getConnection());
+        openConnections.add(connection);
+
+        return connection;
+    }
+
+    private void release(PooledConnection connection) {
+        // the lease may be given back by another thread, that one's binding isn't touched,
+        // the owner drops its stale binding on its next acquire()
+        if (connection.owner == Thread.currentThread()) {
+            currentConnection.remove();
+        }
+
+        connection.owner = null;
+        borrowedConnections.remove(connection);
+
+        try {
+            if (!connection.connection.getAutoCommit()) {
+                // whatever wasn't committed by the borrower mustn't leak into the next one
+                connection.connection.rollback();
+                connection.connection.setAutoCommit(true);
+            }
+
+            connection.transactionEnded(false);
+
+            if (closed) {
+                connection.closePhysical();
+            } else {
+                idleConnections.offerFirst(connection);
+            }
+        } catch (SQLException e) {
+            errorListener.accept(e);
+            connection.closePhysical();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void detectLeaks() {
+        long now = System.nanoTime();
+
+        for (PooledConnection connection : borrowedConnections) {
+            if (!connection.leakReported && now - connection.borrowedAt > leakDetectionThreshold.toNanos()) {
+                connection.leakReported = true;
+                leakCount.incrementAndGet();
+
+                errorListener.accept(new IllegalStateException(String.format(
+                        "Connection held for more than %s, possible leak", leakDetectionThreshold
+                ), connection.borrowedBy));
+            }
+        }
+    }
+
+    private class PooledConnection implements ConnectionLease {
+        private final Connection connection;
+        private final StatementCache statementCache;
+
+        private int depth;
+        private int transactionDepth;
+        private volatile Thread owner;
+        private volatile long borrowedAt;
+        private volatile Throwable borrowedBy;
+        private volatile boolean leakReported;
+        private final List<Runnable> afterTransactionActions = new ArrayList<>();
+        private final List<Runnable> afterCommitActions = new ArrayList<>();
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+            this.statementCache = new StatementCache(connection, StatementCache.DEFAULT_MAX_SIZE, errorListener);
+        }
+
+        @Override
+        public Connection connection() {
+            return connection;
+        }
+
+        @Override
+        public StatementCache statementCache() {
+            return statementCache;
+        }
+
+        private synchronized void afterTransaction(Runnable action) {
+            afterTransactionActions.add(action);
+        }
+
+        private synchronized void afterCommit(Runnable action) {
+            afterCommitActions.add(action);
+        }
+
+        private synchronized int afterCommitMark() {
+            return afterCommitActions.size();
+        }
+
+        private synchronized void dropAfterCommit(int mark) {
+            afterCommitActions.subList(mark, afterCommitActions.size()).clear();
+        }
+
+        @Override
+        public void transactionEnded(boolean committed) {
+            List<Runnable> actions;
+
+            synchronized (this) {
+                actions = new ArrayList<>(afterTransactionActions);
+                afterTransactionActions.clear();
+
+                if (committed) {
+                    actions.addAll(afterCommitActions);
+                }
+
+                afterCommitActions.clear();
+            }
+
+            actions.forEach(Runnable::run);
+        }
+
+        @Override
+        public void close() {
+            statementCache.endOperation();
+
+            if (--depth == 0) {
+                release(this);
+            }
+        }
+
+        private void closePhysical() {
+            openConnections.remove(this);
+            statementCache.close();
+
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                errorListener.accept(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.artsiomhanchar.peopledb.pool;
+
+import java.sql.SQLException;
+
+/**
+ * Where repositories get their connections from: one shared connection ({@link SingleConnectionProvider})
+ * or a pool of them ({@link ConnectionPool}).
+ */
+public interface ConnectionProvider {
+
+    /**
+     * Leases a connection for one operation. Operations nested in it on the same thread
+     * (e.g. saving the addresses of a person) get the same connection.
+     */
+    ConnectionLease acquire() throws SQLException;
+
+    /**
+     * @return true if the current thread's connection is in a transaction, e.g. of a
+     * {@link ConnectionPool#inTransaction(java.util.concurrent.Callable)}, so what it reads may not be committed
+     */
+    boolean isInTransaction() throws SQLException;
+
+    /**
+     * Runs the action once the transaction of the current thread's connection has ended, committed or rolled back,
+     * or right away if it isn't in one. E.g. an entity cache invalidates written entities once more after the commit,
+     * until then other threads still read the state before the write and may cache it.
+     */
+    void afterTransaction(Runnable action) throws SQLException;
+
+    /**
+     * Runs the action once the transaction of the current thread's connection commits, or right away if it isn't
+     * in one. If the transaction is rolled back the action is dropped, e.g. a cache of saved rows is only filled
+     * with the ones that made it to the database.
+     */
+    void afterCommit(Runnable action) throws SQLException;
+}
@@ -0,0 +1,21 @@
+package com.artsiomhanchar.peopledb.pool;
+
+import java.time.Duration;
+
+/**
+ * Point in time numbers of a {@link ConnectionPool}.
+ */
+public record PoolMetrics(
+        int maxSize,
+        int openConnections,
+        int activeConnections,
+        int idleConnections,
+        long borrowCount,
+        long timeoutCount,
+        Duration averageWait,
+        Duration maxWait,
+        long leakCount,
+        long statementCacheHits,
+        long statementCacheMisses
+) {
+}
@@ -0,0 +1,81 @@
+package com.artsiomhanchar.peopledb.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.function.Consumer;
+
+/**
+ * Hands out the same connection for every operation. That's what a repository built from a plain
+ * {@link Connection} uses, so it's not safe for concurrent use - use a {@link ConnectionPool} for that.
+ */
+public class SingleConnectionProvider implements ConnectionProvider, ConnectionLease {
+    private final Connection connection;
+    private final StatementCache statementCache;
+
+    public SingleConnectionProvider(Connection connection) {
+        this(connection, StatementCache.DEFAULT_MAX_SIZE);
+    }
+
+    public SingleConnectionProvider(Connection connection, int statementCacheSize) {
+        this(connection, statementCacheSize, e -> { });
+    }
+
+    /**
+     * @param errorListener called with what closing a cached statement failed with, e.g. to log it
+     */
+    public SingleConnectionProvider(Connection connection, int statementCacheSize, Consumer<Throwable> errorListener) {
+        this.connection = connection;
+        this.statementCache = new StatementCache(connection, statementCacheSize, errorListener);
+    }
+
+    @Override
+    public ConnectionLease acquire() {
+        statementCache.beginOperation();
+
+        return this;
+    }
+
+    @Override
+    public boolean isInTransaction() throws SQLException {
+        return !connection.getAutoCommit();
+    }
+
+    /**
+     * Runs the action right away. There's no other thread to read the connection's state before the transaction ends,
+     * and the caller may commit the connection directly, so there'd be no telling when it does.
+     */
+    @Override
+    public void afterTransaction(Runnable action) {
+        action.run();
+    }
+
+    /**
+     * Runs the action right away if the connection auto-commits. Otherwise it's dropped: the caller commits
+     * or rolls back the connection directly, so there'd be no telling whether the transaction made it.
+     */
+    @Override
+    public void afterCommit(Runnable action) throws SQLException {
+        if (connection.getAutoCommit()) {
+            action.run();
+        }
+    }
+
+    @Override
+    public Connection connection() {
+        return connection;
+    }
+
+    @Override
+    public StatementCache statementCache() {
+        return statementCache;
+    }
+
+    /**
+     * The connection is owned by the caller, so there's nothing to give back, the statements prepared
+     * for the lease may be evicted from now on.
+     */
+    @Override
+    public void close() {
+        statementCache.endOperation();
+    }
+}
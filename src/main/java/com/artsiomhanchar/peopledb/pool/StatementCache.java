@@ -0,0 +1,181 @@
+package com.artsiomhanchar.peopledb.pool;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Bounded LRU cache of the {@link PreparedStatement}s of one {@link Connection}.
+ * Statements are keyed by SQL text, result set type and generated keys flag, so the same SQL prepared
+ * for a scrollable cursor and a forward-only one doesn't share a statement.
+ * Evicted statements are closed right away, the rest of them are closed by {@link #close()}.
+ * <p>
+ * Statements prepared during an {@link #beginOperation() operation}, e.g. a borrow of the connection, aren't evicted
+ * before it ends: an outer call may still be using one while a nested call, e.g. saving the address of a person,
+ * prepares another. Meanwhile the cache may grow past its max size, it's cut back when the operation ends.
+ */
+public class StatementCache implements AutoCloseable {
+    public static final int DEFAULT_MAX_SIZE = 64;
+
+    private record Key(String sql, int resultSetType, int autoGeneratedKeys) { }
+
+    private final Connection connection;
+    private final int maxSize;
+    private final Consumer<Throwable> errorListener;
+    private final Map<Key, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<Key> inUse = new HashSet<>();
+    private int operationDepth;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public StatementCache(Connection connection) {
+        this(connection, DEFAULT_MAX_SIZE);
+    }
+
+    public StatementCache(Connection connection, int maxSize) {
+        this(connection, maxSize, e -> { });
+    }
+
+    /**
+     * @param errorListener called with what closing a statement failed with, e.g. to log it
+     */
+    public StatementCache(Connection connection, int maxSize, Consumer<Throwable> errorListener) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Statement cache size must be positive: " + maxSize);
+        }
+
+        this.connection = connection;
+        this.maxSize = maxSize;
+        this.errorListener = errorListener;
+    }
+
+    /**
+     * Starts an operation on the connection, operations may nest. None of the statements prepared until
+     * the outermost one {@link #endOperation() ends} is evicted.
+     */
+    public synchronized void beginOperation() {
+        operationDepth++;
+    }
+
+    public synchronized void endOperation() {
+        if (operationDepth == 0) {
+            throw new IllegalStateException("No operation in progress");
+        }
+
+        if (--operationDepth == 0) {
+            inUse.clear();
+            evictOverflow();
+        }
+    }
+
+    public PreparedStatement prepare(String sql) throws SQLException {
+        return prepare(sql, ResultSet.TYPE_FORWARD_ONLY, Statement.NO_GENERATED_KEYS);
+    }
+
+    public PreparedStatement prepareWithGeneratedKeys(String sql) throws SQLException {
+        return prepare(sql, ResultSet.TYPE_FORWARD_ONLY, Statement.RETURN_GENERATED_KEYS);
+    }
+
+    public PreparedStatement prepare(String sql, int resultSetType) throws SQLException {
+        return prepare(sql, resultSetType, Statement.NO_GENERATED_KEYS);
+    }
+
+    private synchronized PreparedStatement prepare(String sql, int resultSetType, int autoGeneratedKeys) throws SQLException {
+        Key key = new Key(sql, resultSetType, autoGeneratedKeys);
+        PreparedStatement ps = statements.get(key);
+
+        if (operationDepth > 0) {
+            inUse.add(key);
+        }
+
+        if (ps != null && !ps.isClosed()) {
+            hitCount++;
+            ps.clearParameters();
+
+            return ps;
+        }
+
+        missCount++;
+
+        if (autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS) {
+            ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        } else {
+            ps = connection.prepareStatement(sql, resultSetType, ResultSet.CONCUR_READ_ONLY);
+        }
+
+        statements.put(key, ps);
+        evictOverflow();
+
+        return ps;
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<Key, PreparedStatement>> eldestFirst = statements.entrySet().iterator();
+
+        while (statements.size() > maxSize && eldestFirst.hasNext()) {
+            Map.Entry<Key, PreparedStatement> entry = eldestFirst.next();
+
+            if (!inUse.contains(entry.getKey())) {
+                eldestFirst.remove();
+                evictionCount++;
+                closeQuietly(entry.getValue());
+            }
+        }
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized int size() {
+        return statements.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public synchronized void close() {
+        statements.values().forEach(this::closeQuietly);
+        statements.clear();
+        inUse.clear();
+    }
+
+    private void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            errorListener.accept(e);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "StatementCache{" +
+                "size=" + statements.size() +
+                ", maxSize=" + maxSize +
+                ", hits=" + hitCount +
+                ", misses=" + missCount +
+                ", evictions=" + evictionCount +
+                '}';
+    }
+}
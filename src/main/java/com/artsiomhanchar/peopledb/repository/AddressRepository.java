@@ -4,43 +4,248 @@ import com.artsiomhanchar.peopledb.annotation.SQL;
 import com.artsiomhanchar.peopledb.model.Address;
 import com.artsiomhanchar.peopledb.model.CrudOperation;
 import com.artsiomhanchar.peopledb.model.Region;
+import com.artsiomhanchar.peopledb.pool.ConnectionLease;
+import com.artsiomhanchar.peopledb.pool.ConnectionProvider;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class AddressRepository extends GrudRepository<Address> {
+    public static final int DEFAULT_RECENT_ADDRESS_CACHE_SIZE = 10_000;
+
+    public static final String FIND_BY_CONTENT_HASH_SQL = """
+            SELECT ID, STREET_ADDRESS, ADDRESS2, CITY, STATE, POSTCODE, COUNTY, REGION, COUNTRY
+            FROM ADDRESSES
+            WHERE CONTENT_HASH = ANY(?)
+            """;
+
+    private final RowPlanCache<AddressColumns> rowPlans = new RowPlanCache<>(shape -> AddressColumns.resolve(shape, ""));
+    private boolean deduplicateByContent = false;
+    private final Map<String, Address> recentAddresses = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Address> eldest) {
+            return size() > recentAddressCacheSize;
+        }
+    };
+    private int recentAddressCacheSize = DEFAULT_RECENT_ADDRESS_CACHE_SIZE;
+
     public AddressRepository(Connection connection) {
         super(connection);
     }
 
+    public AddressRepository(ConnectionProvider connectionProvider) {
+        super(connectionProvider);
+    }
+
     @Override
     @SQL(operationType = CrudOperation.FIND_BY_ID, value = """
             SELECT ID, STREET_ADDRESS, ADDRESS2, CITY, STATE, POSTCODE, COUNTY, REGION, COUNTRY
             FROM ADDRESSES
             WHERE ID = ?
             """)
+    @SQL(operationType = CrudOperation.FIND_PAGE, value = """
+            SELECT ID, STREET_ADDRESS, ADDRESS2, CITY, STATE, POSTCODE, COUNTY, REGION, COUNTRY
+            FROM ADDRESSES
+            WHERE ID > ?
+            ORDER BY ID
+            FETCH FIRST ? ROWS ONLY
+            """)
     Address extractEntityFromResultSet(ResultSet rs) throws SQLException {
-        long addressId = rs.getLong("ID");
-        String streetAddress = rs.getString("STREET_ADDRESS");
-        String address2 = rs.getString("ADDRESS2");
-        String city = rs.getString("CITY");
-        String state = rs.getString("STATE");
-        String postcode = rs.getString("POSTCODE");
-        String county = rs.getString("COUNTY");
-        Region region = Region.valueOf(rs.getString("REGION").toUpperCase());
-        String country = rs.getString("COUNTRY");
+        return rowPlans.planFor(rs).extract(rs);
+    }
+
+    /**
+     * @return the address itself if it's saved (it has an ID). Otherwise, with {@link #setDeduplicateByContent(boolean)} on,
+     * a saved address with the same content, if there's one, or else the address once it's saved.
+     */
+    public Address findOrSave(Address address) {
+        if (address.id() != null) {
+            return address;
+        }
+
+        if (!deduplicateByContent) {
+            return save(address);
+        }
+
+        return findOrSaveAll(List.of(address), getBatchSize()).get(address);
+    }
+
+    /**
+     * Batch variant of {@link #findOrSave(Address)}: one lookup query for the addresses not seen recently,
+     * then one insert batch for the ones that are new. Addresses with equal content are saved once.
+     * @return saved address for every given one, by identity
+     */
+    public Map<Address, Address> findOrSaveAll(Collection<Address> addresses, int batchSize) {
+        Map<Address, Address> resolved = new IdentityHashMap<>();
+        List<Address> unsaved = new ArrayList<>();
+
+        for (Address address : addresses) {
+            if (address.id() != null) {
+                resolved.put(address, address);
+            } else {
+                unsaved.add(address);
+            }
+        }
+
+        if (!deduplicateByContent) {
+            saveAll(unsaved, batchSize).forEach(address -> resolved.put(address, address));
 
-        Address address = new Address(addressId, streetAddress, address2, city, state, postcode, country, county, region);
+            return resolved;
+        }
 
-        return address;
+        Map<String, List<Address>> unsavedByHash = new LinkedHashMap<>();
+
+        for (Address address : unsaved) {
+            unsavedByHash.computeIfAbsent(contentHash(address), hash -> new ArrayList<>()).add(address);
+        }
+
+        Map<String, Address> known = new HashMap<>();
+
+        synchronized (recentAddresses) {
+            for (String hash : unsavedByHash.keySet()) {
+                Address recent = recentAddresses.get(hash);
+
+                if (recent != null) {
+                    known.put(hash, recent);
+                }
+            }
+        }
+
+        List<String> lookupHashes = unsavedByHash.keySet().stream().filter(hash -> !known.containsKey(hash)).toList();
+
+        if (!lookupHashes.isEmpty()) {
+            known.putAll(findByContentHashes(lookupHashes));
+        }
+
+        List<Address> newAddresses = new ArrayList<>();
+
+        unsavedByHash.forEach((hash, equalAddresses) -> {
+            if (!known.containsKey(hash)) {
+                newAddresses.add(equalAddresses.get(0));
+            }
+        });
+
+        for (Address saved : saveAll(newAddresses, batchSize)) {
+            known.put(contentHash(saved), saved);
+        }
+
+        try {
+            // in a transaction that's rolled back, the saved ones and the uncommitted ones found would be left with IDs that don't exist
+            getConnectionProvider().afterCommit(() -> {
+                synchronized (recentAddresses) {
+                    recentAddresses.putAll(known);
+                }
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        unsavedByHash.forEach((hash, equalAddresses) -> equalAddresses.forEach(address -> resolved.put(address, known.get(hash))));
+
+        return resolved;
+    }
+
+    private Map<String, Address> findByContentHashes(List<String> hashes) {
+        Map<String, Address> found = new HashMap<>();
+
+        try (ConnectionLease lease = getConnectionProvider().acquire()) {
+            PreparedStatement ps = lease.statementCache().prepare(FIND_BY_CONTENT_HASH_SQL);
+
+            ps.setArray(1, lease.connection().createArrayOf("VARCHAR", hashes.toArray()));
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Address address = extractEntityFromResultSet(rs);
+
+                    found.putIfAbsent(contentHash(address), address);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        return found;
+    }
+
+    /**
+     * SHA-256 of everything but the ID, stored in ADDRESSES.CONTENT_HASH.
+     */
+    static String contentHash(Address address) {
+        MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        for (Object field : new Object[] {
+                address.streetAddress(), address.address2(), address.city(), address.state(),
+                address.postcode(), address.county(), address.region(), address.country()
+        }) {
+            // a separator that can't be part of a value, so ("ab", "c") and ("a", "bc") differ
+            digest.update(field == null ? new byte[] { 0 } : (field + "\u0001").getBytes(StandardCharsets.UTF_8));
+        }
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public boolean isDeduplicateByContent() {
+        return deduplicateByContent;
+    }
+
+    public void setDeduplicateByContent(boolean deduplicateByContent) {
+        this.deduplicateByContent = deduplicateByContent;
+    }
+
+    public int getRecentAddressCacheSize() {
+        return recentAddressCacheSize;
+    }
+
+    public void setRecentAddressCacheSize(int recentAddressCacheSize) {
+        synchronized (recentAddresses) {
+            this.recentAddressCacheSize = recentAddressCacheSize;
+        }
+    }
+
+    @Override
+    protected void entityWritten(Address address) {
+        super.entityWritten(address);
+
+        // whatever happened to the row, the next lookup goes to the database
+        synchronized (recentAddresses) {
+            recentAddresses.remove(contentHash(address));
+        }
+    }
+
+    @Override
+    protected void entityDeleted(Long id) {
+        super.entityDeleted(id);
+
+        synchronized (recentAddresses) {
+            recentAddresses.values().removeIf(address -> id.equals(address.id()));
+        }
     }
 
     @Override
     @SQL(operationType = CrudOperation.SAVE, value = """
-            INSERT INTO ADDRESSES (STREET_ADDRESS, ADDRESS2, CITY, STATE, POSTCODE, COUNTY, REGION, COUNTRY)
-            VALUES(?, ?, ?, ?, ?, ?, ?, ?)
+            INSERT INTO ADDRESSES (STREET_ADDRESS, ADDRESS2, CITY, STATE, POSTCODE, COUNTY, REGION, COUNTRY, CONTENT_HASH)
+            VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?)
             """)
     void mapForSave(Address entity, PreparedStatement ps) throws SQLException {
         ps.setString(1, entity.streetAddress());
@@ -51,11 +256,77 @@ public class AddressRepository extends GrudRepository<Address> {
         ps.setString(6, entity.county());
         ps.setString(7, entity.region().toString());
         ps.setString(8, entity.country());
-
+        ps.setString(9, contentHash(entity));
     }
 
+    /**
+     * Addresses are immutable, a loaded one can't change, so there's nothing to track:
+     * an update writes an address with the ID of a saved one as a whole.
+     */
     @Override
+    @SQL(operationType = CrudOperation.UPDATE, value = """
+            UPDATE ADDRESSES
+            SET STREET_ADDRESS=?, ADDRESS2=?, CITY=?, STATE=?, POSTCODE=?, COUNTY=?, REGION=?, COUNTRY=?, CONTENT_HASH=?
+            WHERE ID=?
+            """)
     void mapForUpdate(Address entity, PreparedStatement ps) throws SQLException {
+        mapForSave(entity, ps);
+        ps.setLong(10, entity.id());
+    }
+
+    @Override
+    public int updateAll(Iterable<Address> addresses) {
+        int updatedCount = super.updateAll(addresses);
+        Set<Long> ids = new HashSet<>();
+
+        addresses.forEach(address -> ids.add(address.id()));
+
+        // the recent ones are keyed by the old content
+        synchronized (recentAddresses) {
+            recentAddresses.values().removeIf(address -> ids.contains(address.id()));
+        }
+
+        return updatedCount;
+    }
+
+    /**
+     * Indices of the address columns whose labels start with the prefix, e.g. HOME_A_ in a join with PEOPLE.
+     */
+    record AddressColumns(int id, int streetAddress, int address2, int city, int state, int postcode, int county, int region, int country) {
+        static AddressColumns resolve(ResultSetShape shape, String prefix) {
+            return new AddressColumns(
+                    shape.indexOf(prefix + "ID"),
+                    shape.indexOf(prefix + "STREET_ADDRESS"),
+                    shape.indexOf(prefix + "ADDRESS2"),
+                    shape.indexOf(prefix + "CITY"),
+                    shape.indexOf(prefix + "STATE"),
+                    shape.indexOf(prefix + "POSTCODE"),
+                    shape.indexOf(prefix + "COUNTY"),
+                    shape.indexOf(prefix + "REGION"),
+                    shape.indexOf(prefix + "COUNTRY")
+            );
+        }
+
+        /**
+         * @return null if the row has no address, e.g. a person without one in a LEFT OUTER JOIN
+         */
+        Address extract(ResultSet rs) throws SQLException {
+            Long addressId = ResultSetShape.getLong(rs, id);
+
+            if (addressId == null) {
+                return null;
+            }
+
+            String streetAddress = ResultSetShape.getString(rs, this.streetAddress);
+            String address2 = ResultSetShape.getString(rs, this.address2);
+            String city = ResultSetShape.getString(rs, this.city);
+            String state = ResultSetShape.getString(rs, this.state);
+            String postcode = ResultSetShape.getString(rs, this.postcode);
+            String county = ResultSetShape.getString(rs, this.county);
+            Region region = Region.valueOf(ResultSetShape.getString(rs, this.region).toUpperCase());
+            String country = ResultSetShape.getString(rs, this.country);
 
+            return new Address(addressId, streetAddress, address2, city, state, postcode, country, county, region);
+        }
     }
 }
@@ -0,0 +1,134 @@
+package com.artsiomhanchar.peopledb.repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * CompletableFuture variants of the repository operations for callers that shouldn't block on JDBC.
+ * <p>
+ * Every call runs as its own task, on a virtual thread when the JVM has them (Java 21+) and on a
+ * fixed pool of maxConcurrency platform threads otherwise. At most maxConcurrency operations hit
+ * the database at a time, the rest wait for a permit; give it the pool size of the repository's
+ * {@link com.artsiomhanchar.peopledb.pool.ConnectionPool} so waiting happens here, not on a borrow timeout.
+ */
+public class AsyncRepository<T> implements AutoCloseable {
+    private final GrudRepository<T> repository;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Semaphore permits;
+
+    public AsyncRepository(GrudRepository<T> repository, int maxConcurrency) {
+        this(repository, maxConcurrency, newTaskExecutor(maxConcurrency), true);
+    }
+
+    /**
+     * @param executor isn't shut down by {@link #close()}
+     */
+    public AsyncRepository(GrudRepository<T> repository, int maxConcurrency, ExecutorService executor) {
+        this(repository, maxConcurrency, executor, false);
+    }
+
+    private AsyncRepository(GrudRepository<T> repository, int maxConcurrency, ExecutorService executor, boolean ownsExecutor) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Max concurrency must be positive: " + maxConcurrency);
+        }
+
+        this.repository = repository;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.permits = new Semaphore(maxConcurrency, true);
+    }
+
+    public CompletableFuture<T> saveAsync(T entity) {
+        return submit(() -> repository.save(entity));
+    }
+
+    public CompletableFuture<List<T>> saveAllAsync(Iterable<T> entities) {
+        return submit(() -> repository.saveAll(entities));
+    }
+
+    public CompletableFuture<Optional<T>> findByIdAsync(Long id) {
+        return submit(() -> repository.findById(id));
+    }
+
+    public CompletableFuture<List<T>> findAllAsync() {
+        return submit(repository::findAll);
+    }
+
+    public CompletableFuture<Long> countAsync() {
+        return submit(repository::count);
+    }
+
+    public CompletableFuture<Integer> deleteAsync(T entity) {
+        return submit(() -> repository.delete(entity));
+    }
+
+    public CompletableFuture<Long> deleteAllByIdAsync(Collection<Long> ids) {
+        return submit(() -> repository.deleteAllById(ids));
+    }
+
+    public CompletableFuture<Void> updateAsync(T entity) {
+        return submit(() -> {
+            repository.update(entity);
+            return null;
+        });
+    }
+
+    public GrudRepository<T> getRepository() {
+        return repository;
+    }
+
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    private <R> CompletableFuture<R> submit(Supplier<R> operation) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+
+            try {
+                return operation.get();
+            } finally {
+                permits.release();
+            }
+        }, executor);
+    }
+
+    static ExecutorService newTaskExecutor(int platformThreads) {
+        try {
+            // looked up reflectively, the project still compiles for Java 17
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(platformThreads, new DaemonThreadFactory());
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "async-repository-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.artsiomhanchar.peopledb.repository;
+
+import java.util.function.Function;
+
+/**
+ * A column a repository lets {@link Criteria} filter and sort by, e.g. {@link PeopleRepository#LAST_NAME}.
+ * Only the attributes a repository declares in {@link GrudRepository#getQueryAttributes()} make it into SQL,
+ * the values are always bound as parameters.
+ * @param <V> type of the values compared with the column
+ */
+public final class Attribute<V> {
+    private final String name;
+    private final String column;
+    private final Function<V, Object> toJdbc;
+    private final String join;
+
+    private Attribute(String name, String column, Function<V, Object> toJdbc, String join) {
+        this.name = name;
+        this.column = column;
+        this.toJdbc = toJdbc;
+        this.join = join;
+    }
+
+    /**
+     * @param column column as the repository's criteria SQL names it, e.g. PARENT.LAST_NAME
+     */
+    public static <V> Attribute<V> of(String name, String column) {
+        return new Attribute<>(name, column, value -> value, null);
+    }
+
+    /**
+     * @param toJdbc turns a value into what the column is compared with, e.g. a ZonedDateTime into a UTC Timestamp
+     */
+    public static <V> Attribute<V> of(String name, String column, Function<V, Object> toJdbc) {
+        return new Attribute<>(name, column, toJdbc, null);
+    }
+
+    /**
+     * @param join the JOIN of the table the column is in, e.g. "LEFT OUTER JOIN ADDRESSES AS HOME_A ON ...".
+     * It's added to the criteria SQL only when the criteria use the attribute and the SQL doesn't join the table already.
+     */
+    public static <V> Attribute<V> of(String name, String column, Function<V, Object> toJdbc, String join) {
+        return new Attribute<>(name, column, toJdbc, join);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    String getColumn() {
+        return column;
+    }
+
+    String getJoin() {
+        return join;
+    }
+
+    Object toJdbc(V value) {
+        return value == null ? null : toJdbc.apply(value);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,164 @@
+package com.artsiomhanchar.peopledb.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Conditions, ORDER BY and limit of a {@link GrudRepository#find(Criteria)} query, e.g.
+ * <pre>
+ * Criteria.where(LAST_NAME).eq("Smith").and(SALARY).between(low, high).orderByDescending(SALARY).limit(50)
+ * </pre>
+ * Conditions are ANDed. Each one compares a bare column with a parameter, so an index on the column can be used.
+ */
+public final class Criteria {
+    private final List<Condition> conditions = new ArrayList<>();
+    private final List<Order> orders = new ArrayList<>();
+    private Integer limit;
+
+    private Criteria() { }
+
+    public static <V> Restriction<V> where(Attribute<V> attribute) {
+        return new Criteria().and(attribute);
+    }
+
+    /**
+     * @return criteria without conditions, e.g. just to sort and limit
+     */
+    public static Criteria all() {
+        return new Criteria();
+    }
+
+    public <V> Restriction<V> and(Attribute<V> attribute) {
+        return new Restriction<>(this, attribute);
+    }
+
+    public Criteria orderBy(Attribute<?> attribute) {
+        orders.add(new Order(attribute, true));
+        return this;
+    }
+
+    public Criteria orderByDescending(Attribute<?> attribute) {
+        orders.add(new Order(attribute, false));
+        return this;
+    }
+
+    public Criteria limit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be positive: " + limit);
+        }
+
+        this.limit = limit;
+        return this;
+    }
+
+    List<Condition> getConditions() {
+        return conditions;
+    }
+
+    List<Order> getOrders() {
+        return orders;
+    }
+
+    Integer getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return what the SQL depends on, without the values: criteria of the same shape share one statement
+     */
+    String shape() {
+        StringBuilder shape = new StringBuilder();
+
+        conditions.forEach(condition -> shape.append(condition.attribute().getName()).append(' ').append(condition.operator()).append(';'));
+        orders.forEach(order -> shape.append("order ").append(order.attribute().getName()).append(order.ascending() ? " ASC;" : " DESC;"));
+
+        return shape.append(limit != null ? "limit" : "").toString();
+    }
+
+    /**
+     * @return the values to bind, in the order of the parameters
+     */
+    List<Object> parameters() {
+        List<Object> parameters = new ArrayList<>();
+
+        conditions.forEach(condition -> parameters.addAll(condition.values()));
+
+        if (limit != null) {
+            parameters.add(limit);
+        }
+
+        return parameters;
+    }
+
+    @Override
+    public String toString() {
+        return shape() + " " + parameters();
+    }
+
+    enum Operator {
+        EQ("%s = ?"),
+        GREATER_OR_EQUAL("%s >= ?"),
+        LESS_THAN("%s < ?"),
+        BETWEEN("%s BETWEEN ? AND ?");
+
+        private final String sql;
+
+        Operator(String sql) {
+            this.sql = sql;
+        }
+
+        String toSql(String column) {
+            return String.format(sql, column);
+        }
+    }
+
+    record Condition(Attribute<?> attribute, Operator operator, List<Object> values) { }
+
+    record Order(Attribute<?> attribute, boolean ascending) { }
+
+    /**
+     * The condition on one attribute, completed by one of its methods.
+     */
+    public static final class Restriction<V> {
+        private final Criteria criteria;
+        private final Attribute<V> attribute;
+
+        private Restriction(Criteria criteria, Attribute<V> attribute) {
+            this.criteria = criteria;
+            this.attribute = attribute;
+        }
+
+        public Criteria eq(V value) {
+            return add(Operator.EQ, Objects.requireNonNull(value, "Value must not be null"));
+        }
+
+        public Criteria greaterOrEqual(V value) {
+            return add(Operator.GREATER_OR_EQUAL, Objects.requireNonNull(value, "Value must not be null"));
+        }
+
+        public Criteria lessThan(V value) {
+            return add(Operator.LESS_THAN, Objects.requireNonNull(value, "Value must not be null"));
+        }
+
+        /**
+         * Both ends included.
+         */
+        public Criteria between(V from, V to) {
+            return add(Operator.BETWEEN, Objects.requireNonNull(from, "From must not be null"), Objects.requireNonNull(to, "To must not be null"));
+        }
+
+        @SafeVarargs
+        private Criteria add(Operator operator, V... values) {
+            List<Object> jdbcValues = new ArrayList<>();
+
+            for (V value : values) {
+                jdbcValues.add(attribute.toJdbc(value));
+            }
+
+            criteria.conditions.add(new Condition(attribute, operator, jdbcValues));
+
+            return criteria;
+        }
+    }
+}
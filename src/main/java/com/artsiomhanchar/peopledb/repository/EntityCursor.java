@@ -0,0 +1,52 @@
+package com.artsiomhanchar.peopledb.repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads entities from a result set moving only forward.
+ * An entity can span several rows (e.g. a person with its children), so after an entity is extracted
+ * the following rows are offered to {@link GrudRepository#mergeRowIntoEntity(Object, ResultSet)} until
+ * a row of the next entity shows up. That row stays current and starts the next entity,
+ * so a TYPE_FORWARD_ONLY cursor is enough.
+ * Every entity is snapshotted for dirty tracking once it's complete.
+ */
+class EntityCursor<T> implements Iterator<T> {
+    private final GrudRepository<T> repository;
+    private final ResultSet rs;
+    private boolean onRow;
+
+    EntityCursor(GrudRepository<T> repository, ResultSet rs) throws SQLException {
+        this.repository = repository;
+        this.rs = rs;
+        this.onRow = rs.next();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return onRow;
+    }
+
+    @Override
+    public T next() {
+        if (!onRow) {
+            throw new NoSuchElementException();
+        }
+
+        try {
+            T entity = repository.extractEntityFromResultSet(rs);
+
+            while ((onRow = rs.next()) && repository.mergeRowIntoEntity(entity, rs)) {
+                // the row belongs to the entity we've just extracted
+            }
+
+            repository.takeSnapshot(entity);
+
+            return entity;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
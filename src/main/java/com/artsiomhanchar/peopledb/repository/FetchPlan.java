@@ -0,0 +1,19 @@
+package com.artsiomhanchar.peopledb.repository;
+
+/**
+ * How a repository loads the associations of an entity, e.g. the children and addresses of a person.
+ */
+public enum FetchPlan {
+    /**
+     * Joined into the query of the entity itself.
+     */
+    EAGER,
+    /**
+     * Loaded with an extra query the first time they're accessed, for that entity only.
+     */
+    LAZY,
+    /**
+     * Loaded with an extra query the first time they're accessed, for every entity found together with it.
+     */
+    BATCH_LAZY
+}
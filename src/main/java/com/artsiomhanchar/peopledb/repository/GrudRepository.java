@@ -1,43 +1,121 @@
 package com.artsiomhanchar.peopledb.repository;
 
-import com.artsiomhanchar.peopledb.annotation.Id;
-import com.artsiomhanchar.peopledb.annotation.MultiSQL;
-import com.artsiomhanchar.peopledb.annotation.SQL;
+import com.artsiomhanchar.peopledb.cache.EntityCache;
 import com.artsiomhanchar.peopledb.exeption.UnableToSaveException;
 import com.artsiomhanchar.peopledb.model.CrudOperation;
+import com.artsiomhanchar.peopledb.pool.ConnectionLease;
+import com.artsiomhanchar.peopledb.pool.ConnectionPool;
+import com.artsiomhanchar.peopledb.pool.ConnectionProvider;
+import com.artsiomhanchar.peopledb.pool.SingleConnectionProvider;
+import com.artsiomhanchar.peopledb.pool.StatementCache;
 
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
 import java.sql.*;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-abstract public class GrudRepository<T> {
+abstract public class GrudRepository<T> implements AutoCloseable {
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final int DEFAULT_FETCH_SIZE = 1_000;
+    public static final int MULTI_GET_CHUNK_SIZE = 1_000;
 
-    protected Connection connection;
+    // update group of the entities written with the UPDATE SQL and mapForUpdate()
+    private static final long MAP_FOR_UPDATE = -1L;
+
+    private final ConnectionProvider connectionProvider;
+    // resolved on first use: it calls the SQL getters, which may read fields of the subclass not set yet in the constructor
+    private volatile SqlRegistry sqlRegistry;
+    private final Class<?> entityClass;
+    private final IdAccessor idAccessor;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private boolean commitPerBatch = false;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    private boolean softDelete = false;
+    private boolean dirtyTracking = true;
+    private final SnapshotStore snapshots = new SnapshotStore();
+    private final Map<Long, String> updateSqlByColumns = new ConcurrentHashMap<>();
+    // by SELECT, then by shape of the criteria
+    private final Map<String, Map<String, String>> criteriaSqlByShape = new ConcurrentHashMap<>();
+    private Consumer<QueryPlan> explainListener;
+    private EntityCache<T> entityCache;
+    private final List<Consumer<Long>> writeListeners = new CopyOnWriteArrayList<>();
 
     public GrudRepository(Connection connection) {
-        this.connection = connection;
+        this(new SingleConnectionProvider(connection));
+    }
+
+    public GrudRepository(Connection connection, int statementCacheSize) {
+        this(new SingleConnectionProvider(connection, statementCacheSize));
+    }
+
+    /**
+     * @param connectionProvider e.g. a {@link ConnectionPool}, which makes the repository safe to share between threads
+     */
+    public GrudRepository(ConnectionProvider connectionProvider) {
+        this.connectionProvider = connectionProvider;
+        this.entityClass = resolveEntityClass(getClass());
+        this.idAccessor = IdAccessor.of(entityClass);
+    }
+
+    private static Class<?> resolveEntityClass(Class<?> repositoryClass) {
+        while (repositoryClass.getSuperclass() != GrudRepository.class) {
+            repositoryClass = repositoryClass.getSuperclass();
+        }
+
+        Type entityType = ((ParameterizedType) repositoryClass.getGenericSuperclass()).getActualTypeArguments()[0];
+
+        return entityType instanceof ParameterizedType parameterizedType ? (Class<?>) parameterizedType.getRawType() : (Class<?>) entityType;
     }
 
-    private String getSQLByAnnotation(CrudOperation operationType, Supplier<String> sqlGetter) {
-        Stream<SQL> multiSQLStream = Arrays.stream(this.getClass().getDeclaredMethods())
-                .filter(method -> method.isAnnotationPresent(MultiSQL.class))
-                .map(method -> method.getAnnotation(MultiSQL.class))
-                .flatMap(multiSQL -> Arrays.stream(multiSQL.value()));
+    protected String sql(CrudOperation operationType) {
+        return sqlRegistry().sql(operationType);
+    }
+
+    private SqlRegistry sqlRegistry() {
+        SqlRegistry registry = sqlRegistry;
+
+        if (registry == null) {
+            // racing threads get the same registry, it's shared by all instances of the class
+            registry = SqlRegistry.of(this);
+            sqlRegistry = registry;
+        }
 
-        Stream<SQL> sqlStream = Arrays.stream(this.getClass().getDeclaredMethods())
-                .filter(method -> method.isAnnotationPresent(SQL.class))
-                .map(method -> method.getAnnotation(SQL.class));
+        return registry;
+    }
 
-        return Stream.concat(multiSQLStream, sqlStream)
-                .filter(annotation -> annotation.operationType().equals(operationType))
-                .map(SQL::value)
-                .findFirst()
-                .orElseGet(sqlGetter);
+    Supplier<String> sqlGetter(CrudOperation operationType) {
+        return switch (operationType) {
+            case SAVE -> this::getSaveSQL;
+            case UPDATE -> this::getUpdateSQL;
+            case FIND_BY_ID -> this::getFindByIdSQL;
+            case FIND_ALL -> this::getFindAllSQL;
+            case DELETE_ONE -> this::getDeleteSQL;
+            case DELETE_MANY -> this::getDeleteInSQL;
+            case COUNT -> this::getCountSQL;
+            case FIND_PAGE -> this::getFindPageSQL;
+            default -> null;
+        };
     }
 
     public T save(T entity) throws UnableToSaveException {
@@ -46,44 +124,203 @@ abstract public class GrudRepository<T> {
 //                person.getFirstName(), person.getLastName(), person.getDob()
 //        );
 
-        try {
-            PreparedStatement ps = connection.prepareStatement(getSQLByAnnotation(CrudOperation.SAVE, this::getSaveSQL), Statement.RETURN_GENERATED_KEYS);
+        try (ConnectionLease lease = connectionProvider.acquire()) {
+            PreparedStatement ps = lease.statementCache().prepareWithGeneratedKeys(sql(CrudOperation.SAVE));
 
             mapForSave(entity, ps);
 
             int recordsAffected = ps.executeUpdate();
-            ResultSet rs = ps.getGeneratedKeys();
+            Long id = null;
 
-            while (rs.next()) {
-                long id = rs.getLong(1);
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                if (rs.next()) {
+                    id = rs.getLong(1);
+                }
+            }
 
+            // the cached statement can be reused by postSave(), so the keys are read before that
+            if (id != null) {
                 setIdByAnnotation(id, entity);
+                rememberInUnitOfWork(entity);
 //                System.out.println(entity);
 
                 postSave(entity, id);
+                entityWritten(entity);
             }
 
 //            System.out.printf("Records affected: %d%n", recordsAffected);
         } catch (SQLException e) {
-            e.printStackTrace();
-            throw new UnableToSaveException("Tried to save person: " + entity);
+            throw new UnableToSaveException("Tried to save person: " + entity, e);
         }
 
         return entity;
     }
 
+    public List<T> saveAll(Iterable<T> entities) throws UnableToSaveException {
+        return saveAll(entities, batchSize);
+    }
+
+    /**
+     * Saves the entities with JDBC batches of batchSize statements, one round trip per batch
+     * instead of one per entity. Generated IDs are set on the entities in the same order.
+     * If {@link #setCommitPerBatch(boolean)} is on, every batch is committed once it's saved.
+     */
+    public List<T> saveAll(Iterable<T> entities, int batchSize) throws UnableToSaveException {
+        return saveInBatches(entities, batchSize, true);
+    }
+
+    /**
+     * Like {@link #saveAll(Iterable, int)}, but without the {@link #preSaveAll(List)} and {@link #postSaveAll(List)} hooks,
+     * for subclasses that save the associations of the entities themselves.
+     */
+    protected List<T> insertAll(Iterable<T> entities, int batchSize) throws UnableToSaveException {
+        return saveInBatches(entities, batchSize, false);
+    }
+
+    private List<T> saveInBatches(Iterable<T> entities, int batchSize, boolean withHooks) throws UnableToSaveException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+
+        List<T> savedEntities = new ArrayList<>();
+        List<T> batch = new ArrayList<>(batchSize);
+
+        for (T entity : entities) {
+            batch.add(entity);
+
+            if (batch.size() == batchSize) {
+                saveBatch(batch, withHooks);
+                savedEntities.addAll(batch);
+                batch.clear();
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            saveBatch(batch, withHooks);
+            savedEntities.addAll(batch);
+        }
+
+        return savedEntities;
+    }
+
+    private void saveBatch(List<T> batch, boolean withHooks) throws UnableToSaveException {
+        try (ConnectionLease lease = connectionProvider.acquire()) {
+            if (withHooks) {
+                preSaveAll(batch);
+            }
+
+            PreparedStatement ps = lease.statementCache().prepareWithGeneratedKeys(sql(CrudOperation.SAVE));
+
+            for (T entity : batch) {
+                mapForSave(entity, ps);
+                ps.addBatch();
+            }
+
+            ps.executeBatch();
+
+            int savedCount = 0;
+
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                while (rs.next() && savedCount < batch.size()) {
+                    setIdByAnnotation(rs.getLong(1), batch.get(savedCount));
+                    rememberInUnitOfWork(batch.get(savedCount++));
+                }
+            }
+
+            if (savedCount != batch.size()) {
+                throw new SQLException(String.format("Expected %d generated keys, got %d", batch.size(), savedCount));
+            }
+
+            if (withHooks) {
+                postSaveAll(batch);
+            }
+
+            batch.forEach(this::entityWritten);
+
+            if (commitPerBatch && !lease.connection().getAutoCommit()) {
+                lease.connection().commit();
+                lease.transactionEnded(true);
+            }
+        } catch (SQLException e) {
+            throw new UnableToSaveException(String.format("Tried to save batch of %d entities, first: %s", batch.size(), batch.get(0)), e);
+        }
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+
+        this.batchSize = batchSize;
+    }
+
+    public boolean isCommitPerBatch() {
+        return commitPerBatch;
+    }
+
+    public void setCommitPerBatch(boolean commitPerBatch) {
+        this.commitPerBatch = commitPerBatch;
+    }
+
+    /**
+     * Inside a {@link UnitOfWork} the lookup goes to its identity map, otherwise to the
+     * {@link #setEntityCache(EntityCache) entity cache} if there's one. Only committed state is cached,
+     * so the entity cache isn't used inside a unit of work or any other transaction.
+     */
     public Optional<T> findById(Long id) {
+        IdentityMap identityMap = UnitOfWork.currentIdentityMap(connectionProvider);
+
+        if (identityMap != null) {
+            @SuppressWarnings("unchecked")
+            T known = (T) identityMap.get(entityClass, id);
+
+            if (known != null) {
+                return Optional.of(known);
+            }
+
+            Optional<T> entity = loadById(id).map(loaded -> attach(loaded, identityMap));
+            entity.ifPresent(loaded -> afterLoad(List.of(loaded)));
+
+            return entity;
+        }
+
+        EntityCache<T> cache = entityCache;
+
+        if (cache == null || isInTransaction()) {
+            return loadAndPrepareById(id);
+        }
+
+        Optional<T> entity = cache.get(id, this::loadById).map(this::copyOf);
+        entity.ifPresent(loaded -> afterLoad(List.of(loaded)));
+
+        return entity;
+    }
+
+    private Optional<T> loadAndPrepareById(Long id) {
+        Optional<T> entity = loadById(id);
+        entity.ifPresent(loaded -> afterLoad(List.of(loaded)));
+
+        return entity;
+    }
+
+    private Optional<T> loadById(Long id) {
         T entity = null;
 
-        try {
-            PreparedStatement ps = connection.prepareStatement(getSQLByAnnotation(CrudOperation.FIND_BY_ID, this::getFindByIdSQL));
+        try (ConnectionLease lease = connectionProvider.acquire()) {
+            PreparedStatement ps = lease.statementCache().prepare(sql(CrudOperation.FIND_BY_ID));
 
             ps.setLong(1, id);
 
-            ResultSet rs = ps.executeQuery();
+            try (ResultSet rs = ps.executeQuery()) {
+                EntityCursor<T> cursor = new EntityCursor<>(this, rs);
 
-            while (rs.next()) {
-                entity = extractEntityFromResultSet(rs);
+                if (cursor.hasNext()) {
+                    entity = cursor.next();
+                }
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -92,24 +329,95 @@ abstract public class GrudRepository<T> {
         return Optional.ofNullable(entity);
     }
 
-    public List<T> findAll() {
-        List<T> entities = new ArrayList<>();
+    /**
+     * Finds the entities with the given IDs with one query per {@value #MULTI_GET_CHUNK_SIZE} IDs,
+     * instead of a findById() per ID. The IDs are bound as an array, so the statement is the same for any number of them.
+     * @return the entities found in the order of the IDs, missing ones are left out
+     */
+    public Map<Long, T> findAllById(Collection<Long> ids) {
+        List<Long> distinctIds = ids.stream().filter(Objects::nonNull).distinct().toList();
+        Map<Long, T> found = new HashMap<>();
+        IdentityMap identityMap = UnitOfWork.currentIdentityMap(connectionProvider);
 
-        try {
-            PreparedStatement ps = connection.prepareStatement(
-                    getSQLByAnnotation(
-                            CrudOperation.FIND_ALL,
-                            this::getFindAllSQL
-                    ),
-                    ResultSet.TYPE_SCROLL_INSENSITIVE,
-                    ResultSet.CONCUR_READ_ONLY
-            );
-            ResultSet rs = ps.executeQuery();
+        if (identityMap != null) {
+            List<Long> missingIds = new ArrayList<>();
+
+            for (Long id : distinctIds) {
+                @SuppressWarnings("unchecked")
+                T known = (T) identityMap.get(entityClass, id);
+
+                if (known != null) {
+                    found.put(id, known);
+                } else {
+                    missingIds.add(id);
+                }
+            }
+
+            List<T> loaded = new ArrayList<>();
+
+            loadAllById(missingIds).forEach((id, entity) -> {
+                T attached = attach(entity, identityMap);
+
+                found.put(id, attached);
+                loaded.add(attached);
+            });
+            afterLoad(loaded);
+        } else if (entityCache != null && !isInTransaction()) {
+            Map<Long, T> copies = new HashMap<>();
+
+            entityCache.getAll(distinctIds, this::loadAllById).forEach((id, entity) -> copies.put(id, copyOf(entity)));
+            afterLoad(new ArrayList<>(copies.values()));
+            found.putAll(copies);
+        } else {
+            found.putAll(loadAndPrepareAllById(distinctIds));
+        }
+
+        Map<Long, T> entities = new LinkedHashMap<>();
 
-            while (rs.next()) {
-                entities.add(extractEntityFromResultSet(rs));
+        for (Long id : distinctIds) {
+            T entity = found.get(id);
+
+            if (entity != null) {
+                entities.put(id, entity);
             }
+        }
+
+        return entities;
+    }
+
+    private Map<Long, T> loadAndPrepareAllById(List<Long> ids) {
+        Map<Long, T> entities = loadAllById(ids);
+        afterLoad(new ArrayList<>(entities.values()));
 
+        return entities;
+    }
+
+    private Map<Long, T> loadAllById(List<Long> ids) {
+        Map<Long, T> entities = new HashMap<>();
+
+        if (ids.isEmpty()) {
+            return entities;
+        }
+
+        if (!sqlRegistry().isDefined(CrudOperation.FIND_ALL_BY_ID)) {
+            // FIND_BY_ID_SQL couldn't be turned into a multi-get, one query per ID it is
+            ids.forEach(id -> loadById(id).ifPresent(entity -> entities.put(id, entity)));
+
+            return entities;
+        }
+
+        try (ConnectionLease lease = connectionProvider.acquire()) {
+            PreparedStatement ps = lease.statementCache().prepare(sql(CrudOperation.FIND_ALL_BY_ID));
+
+            for (int from = 0; from < ids.size(); from += MULTI_GET_CHUNK_SIZE) {
+                List<Long> chunk = ids.subList(from, Math.min(from + MULTI_GET_CHUNK_SIZE, ids.size()));
+
+                ps.setArray(1, lease.connection().createArrayOf("BIGINT", chunk.toArray()));
+
+                try (ResultSet rs = ps.executeQuery()) {
+                    new EntityCursor<>(this, rs).forEachRemaining(entity -> entities.put(getIdByAnnotation(entity), entity));
+                }
+            }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
@@ -117,155 +425,1012 @@ abstract public class GrudRepository<T> {
         return entities;
     }
 
-    public long count() {
-        long count = 0;
+    public List<T> findAll() {
+        List<T> entities = new ArrayList<>();
 
-        try {
-            PreparedStatement ps = connection.prepareStatement(getSQLByAnnotation(CrudOperation.COUNT, this::getCountSQL));
-            ResultSet rs = ps.executeQuery();
+        try (ConnectionLease lease = connectionProvider.acquire()) {
+            PreparedStatement ps = lease.statementCache().prepare(sql(CrudOperation.FIND_ALL));
 
-            if (rs.next()) {
-                count = rs.getLong(1);
+            try (ResultSet rs = ps.executeQuery()) {
+                new EntityCursor<>(this, rs).forEachRemaining(entities::add);
             }
+
         } catch (SQLException e) {
-            e.printStackTrace();
+            throw new RuntimeException(e);
         }
 
-        return count;
+        return prepareLoaded(entities, UnitOfWork.currentIdentityMap(connectionProvider));
     }
 
-    public void delete(T entity) {
-        try {
-            PreparedStatement ps = connection.prepareStatement(getSQLByAnnotation(CrudOperation.DELETE_ONE, this::getDeleteSQL));
+    /**
+     * Keyset pagination: the entities with ID greater than afterId, ordered by ID.
+     * Unlike OFFSET it's an index range scan, so page 1000 costs the same as page 1.
+     * @param afterId ID of the last entity of the previous page, null for the first page
+     */
+    public Page<T> findPage(Long afterId, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page limit must be positive: " + limit);
+        }
 
-            ps.setLong(1, getIdByAnnotation(entity));
+        List<T> entities = new ArrayList<>(limit + 1);
 
-            int affectedRecordCount = ps.executeUpdate();
+        try (ConnectionLease lease = connectionProvider.acquire()) {
+            PreparedStatement ps = lease.statementCache().prepare(sql(CrudOperation.FIND_PAGE));
+
+            ps.setLong(1, afterId != null ? afterId : Long.MIN_VALUE);
+            // one extra row tells if there is a next page
+            ps.setInt(2, limit + 1);
 
-            System.out.println(affectedRecordCount);
+            try (ResultSet rs = ps.executeQuery()) {
+                new EntityCursor<>(this, rs).forEachRemaining(entities::add);
+            }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
-    }
 
-    private Long getIdByAnnotation(T entity) {
-        return Arrays.stream(entity
-                .getClass()
-                .getDeclaredFields()
-        )
-                .filter(field -> field.isAnnotationPresent(Id.class))
-                .map(field -> {
-                    field.setAccessible(true);
-
-                    Long id= null;
-
-                    try {
-                        id = (long) field.get(entity);
-                    } catch (IllegalAccessException e) {
-                        e.printStackTrace();
-                    }
+        IdentityMap identityMap = UnitOfWork.currentIdentityMap(connectionProvider);
 
-                    return id;
-                })
-                .findFirst()
-                .orElseThrow(() -> new RuntimeException("No ID annotated field found"));
-    }
+        if (entities.size() <= limit) {
+            return new Page<>(List.copyOf(prepareLoaded(entities, identityMap)), null);
+        }
 
-    private void setIdByAnnotation(Long id, T entity) {
-        Arrays.stream(entity
-                        .getClass()
-                        .getDeclaredFields()
-                )
-                .filter(field -> field.isAnnotationPresent(Id.class))
-                .forEach(field -> {
-                    field.setAccessible(true);
-
-                    try {
-                        field.set(entity, id);
-                    } catch (IllegalAccessException e) {
-                        throw new RuntimeException("Unable to set ID field value.");
-                    }
-                });
+        List<T> content = List.copyOf(prepareLoaded(entities.subList(0, limit), identityMap));
+
+        return new Page<>(content, getIdByAnnotation(content.get(limit - 1)));
     }
 
-    public void delete(T...entities) { // T[] entities
-//        for(T entity : entities) {
-//            delete(entity);
-//        }
+    /**
+     * Finds the entities matching the criteria with SQL generated from the FIND_BY_CRITERIA SQL,
+     * e.g. "SELECT ... FROM PEOPLE AS PARENT WHERE PARENT.DELETE_FLAG = FALSE", plus the joins of the attributes used,
+     * a condition per criterion, the ORDER BY and the limit. The SQL is generated once per shape of criteria, the values are parameters.
+     * @throws IllegalArgumentException if the criteria use an attribute the repository doesn't declare
+     */
+    public List<T> find(Criteria criteria) {
+        String sql = criteriaSql(sql(CrudOperation.FIND_BY_CRITERIA), List.of(), criteria);
+        List<T> entities = new ArrayList<>();
+
+        try (ConnectionLease lease = connectionProvider.acquire()) {
+            try (ResultSet rs = executeCriteriaQuery(lease, sql, criteria)) {
+                new EntityCursor<>(this, rs).forEachRemaining(entities::add);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
 
-        try {
-            Statement stmt = connection.createStatement();
+        return prepareLoaded(entities, UnitOfWork.currentIdentityMap(connectionProvider));
+    }
 
-            String ids = Arrays.stream(entities)
-//                    .map(entity -> findIdByAnnotation(entity))
-                    .map(this::getIdByAnnotation)
-                    .map(String::valueOf) // 10L => "10"
-                    .collect(
-                            Collectors.joining(",")
-                    );
+    /**
+     * Like {@link #find(Criteria)}, but with another SELECT, e.g. of a few columns only, and rows mapped to projections
+     * instead of entities. The projections aren't tracked, cached or put into a unit of work.
+     * @param selectSql SELECT of the projection, from the same tables as the FIND_BY_CRITERIA SQL so the attributes apply
+     */
+    protected <R> List<R> query(String selectSql, Criteria criteria, RowMapper<R> mapper) {
+        return query(selectSql, List.of(), criteria, mapper);
+    }
 
-            int affectedRecordCount = stmt.executeUpdate(getSQLByAnnotation(CrudOperation.DELETE_MANY, this::getDeleteInSQL).replace(":ids", ids));
+    /**
+     * Aggregating variant of {@link #query(String, Criteria, RowMapper)}: the rows are grouped by the groupBy columns
+     * and sorted by them, so the criteria may filter and limit, but not sort.
+     */
+    protected <R> List<R> query(String selectSql, List<String> groupBy, Criteria criteria, RowMapper<R> mapper) {
+        String sql = criteriaSql(selectSql, groupBy, criteria);
+        List<R> rows = new ArrayList<>();
 
-            System.out.println(affectedRecordCount);
+        try (ConnectionLease lease = connectionProvider.acquire()) {
+            try (ResultSet rs = executeCriteriaQuery(lease, sql, criteria)) {
+                while (rs.next()) {
+                    rows.add(mapper.map(rs));
+                }
+            }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+
+        return rows;
     }
 
-    public void update(T entity) {
+    /**
+     * Like {@link #query(String, List, Criteria, RowMapper)}, but the rows are streamed over a forward-only cursor,
+     * {@link #getFetchSize()} at a time, see {@link #streamAll(int)}. Close the stream when done.
+     */
+    protected <R> Stream<R> streamQuery(String selectSql, List<String> groupBy, Criteria criteria, RowMapper<R> mapper) {
+        String sql = criteriaSql(selectSql, groupBy, criteria);
+
+        if (explainListener != null) {
+            try (ConnectionLease lease = connectionProvider.acquire()) {
+                explainListener.accept(explain(lease, sql, criteria));
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        return stream(sql, fetchSize, ps -> bindCriteria(ps, criteria), rs -> new RowIterator<>(rs, mapper));
+    }
+
+    /**
+     * Runs the query over a forward-only cursor of its own and streams what the rows are read into.
+     * Closing the stream closes the cursor and the statement, then gives the connection back.
+     */
+    private <R> Stream<R> stream(String sql, int fetchSize, ParameterBinder binder, CursorFactory<R> cursorFactory) {
+        ConnectionLease lease = null;
+        PreparedStatement ps = null;
+
         try {
-            PreparedStatement ps = connection.prepareStatement(getSQLByAnnotation(CrudOperation.UPDATE, this::getUpdateSQL));
+            lease = connectionProvider.acquire();
+            // not cached: every open stream needs a cursor of its own
+            ps = lease.connection().prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            binder.bind(ps);
+
+            ResultSet rs = ps.executeQuery();
+            ConnectionLease streamLease = lease;
+            PreparedStatement statement = ps;
 
-            mapForUpdate(entity, ps);
-            ps.executeUpdate();
+            return StreamSupport
+                    .stream(Spliterators.spliteratorUnknownSize(cursorFactory.open(rs), Spliterator.ORDERED | Spliterator.NONNULL), false)
+                    .onClose(() -> {
+                        try (streamLease; statement; rs) {
+                            // closes the cursor and the statement, then gives the connection back
+                        } catch (SQLException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
         } catch (SQLException e) {
+            try {
+                if (ps != null) {
+                    ps.close();
+                }
+            } catch (SQLException closeException) {
+                e.addSuppressed(closeException);
+            } finally {
+                if (lease != null) {
+                    lease.close();
+                }
+            }
+
             throw new RuntimeException(e);
         }
     }
 
-    protected String getUpdateSQL() {
-        throw new RuntimeException("SQL not defined");
-    };
+    @FunctionalInterface
+    private interface ParameterBinder {
+        void bind(PreparedStatement ps) throws SQLException;
+    }
 
-    protected String getDeleteSQL(){
-        throw new RuntimeException("SQL not defined");
-    };
+    @FunctionalInterface
+    private interface CursorFactory<R> {
+        Iterator<R> open(ResultSet rs) throws SQLException;
+    }
 
     /**
-     *
-     * @return SHOULD return a SQL string like:
-     * "DELETE FROM PEOPLE WHERE ID IN (:ids)"
-     * Be sure to include the '(:ids)' named parameter & call it 'ids'
+     * A {@link RowMapper} applied to every row, moving only forward.
      */
-    protected String getDeleteInSQL(){
-        throw new RuntimeException("SQL not defined");
-    };
+    private static final class RowIterator<R> implements Iterator<R> {
+        private final ResultSet rs;
+        private final RowMapper<R> mapper;
+        private boolean onRow;
 
-    protected String getCountSQL(){
-        throw new RuntimeException("SQL not defined");
-    };
+        RowIterator(ResultSet rs, RowMapper<R> mapper) throws SQLException {
+            this.rs = rs;
+            this.mapper = mapper;
+            this.onRow = rs.next();
+        }
 
-    protected String getFindAllSQL(){
-        throw new RuntimeException("SQL not defined");
-    };
+        @Override
+        public boolean hasNext() {
+            return onRow;
+        }
+
+        @Override
+        public R next() {
+            if (!onRow) {
+                throw new NoSuchElementException();
+            }
+
+            try {
+                R row = mapper.map(rs);
+                onRow = rs.next();
+
+                return row;
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private ResultSet executeCriteriaQuery(ConnectionLease lease, String sql, Criteria criteria) throws SQLException {
+        if (explainListener != null) {
+            explainListener.accept(explain(lease, sql, criteria));
+        }
+
+        PreparedStatement ps = lease.statementCache().prepare(sql);
+
+        bindCriteria(ps, criteria);
+
+        return ps.executeQuery();
+    }
 
     /**
-     *
-     * @return Returns a String that represents the SQL needed to retrieve one entity.
-     * The SQL must contain one SQL parameter, i.e. "?", thaw will bind to the
-     * entity's ID.
+     * @return the plan H2 picks for the query of the criteria, e.g. to check that it uses an index
      */
-    protected String getFindByIdSQL() {
-        throw new RuntimeException("SQL not defined");
-    };
+    public QueryPlan explain(Criteria criteria) {
+        String sql = criteriaSql(sql(CrudOperation.FIND_BY_CRITERIA), List.of(), criteria);
 
-    String getSaveSQL() {
-        throw new RuntimeException("SQL not defined");
-    };
+        try (ConnectionLease lease = connectionProvider.acquire()) {
+            return explain(lease, sql, criteria);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
 
-    protected void postSave(T entity, long id) { }
+    private QueryPlan explain(ConnectionLease lease, String sql, Criteria criteria) throws SQLException {
+        try (PreparedStatement ps = lease.connection().prepareStatement("EXPLAIN " + sql)) {
+            bindCriteria(ps, criteria);
 
-    abstract T extractEntityFromResultSet(ResultSet rs) throws SQLException;
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+
+                return new QueryPlan(sql, rs.getString(1));
+            }
+        }
+    }
+
+    /**
+     * @param explainListener called with the plan of every find(Criteria) query before it runs, null turns it off.
+     * It costs an extra round trip per query, it's meant for development.
+     */
+    public void setExplainListener(Consumer<QueryPlan> explainListener) {
+        this.explainListener = explainListener;
+    }
+
+    private String criteriaSql(String selectSql, List<String> groupBy, Criteria criteria) {
+        List<Attribute<?>> queryAttributes = getQueryAttributes();
+
+        criteria.getConditions().forEach(condition -> checkQueryAttribute(queryAttributes, condition.attribute()));
+        criteria.getOrders().forEach(order -> checkQueryAttribute(queryAttributes, order.attribute()));
+
+        if (!groupBy.isEmpty() && !criteria.getOrders().isEmpty()) {
+            throw new IllegalArgumentException("Grouped rows are sorted by the groups, criteria can't sort them: " + criteria);
+        }
+
+        String key = groupBy.isEmpty() ? criteria.shape() : groupBy + criteria.shape();
+
+        return criteriaSqlByShape.computeIfAbsent(selectSql, k -> new ConcurrentHashMap<>()).computeIfAbsent(key, shape -> {
+            StringBuilder sql = new StringBuilder(selectSql.stripTrailing());
+            int whereIndex = sql.toString().toUpperCase().lastIndexOf("\nWHERE ");
+            String separator = whereIndex >= 0 ? "\nAND " : "\nWHERE ";
+
+            // a joined table is only read by the shapes that filter or sort by one of its columns
+            Set<String> joins = new LinkedHashSet<>();
+            criteria.getConditions().forEach(condition -> joins.add(condition.attribute().getJoin()));
+            criteria.getOrders().forEach(order -> joins.add(order.attribute().getJoin()));
+            joins.remove(null);
+            joins.removeIf(selectSql::contains);
+
+            StringBuilder joinSql = new StringBuilder();
+            joins.forEach(join -> joinSql.append('\n').append(join));
+            sql.insert(whereIndex >= 0 ? whereIndex : sql.length(), joinSql);
+
+            for (Criteria.Condition condition : criteria.getConditions()) {
+                sql.append(separator).append(condition.operator().toSql(condition.attribute().getColumn()));
+                separator = " AND ";
+            }
+
+            if (!groupBy.isEmpty()) {
+                sql.append("\nGROUP BY ").append(String.join(", ", groupBy));
+                sql.append("\nORDER BY ").append(String.join(", ", groupBy));
+            }
+
+            separator = "\nORDER BY ";
+
+            for (Criteria.Order order : criteria.getOrders()) {
+                sql.append(separator).append(order.attribute().getColumn()).append(order.ascending() ? " ASC" : " DESC");
+                separator = ", ";
+            }
+
+            if (criteria.getLimit() != null) {
+                sql.append("\nFETCH FIRST ? ROWS ONLY");
+            }
+
+            return sql.append('\n').toString();
+        });
+    }
+
+    private void checkQueryAttribute(List<Attribute<?>> queryAttributes, Attribute<?> attribute) {
+        if (!queryAttributes.contains(attribute)) {
+            throw new IllegalArgumentException(String.format("%s can't query by %s", getClass().getSimpleName(), attribute));
+        }
+    }
+
+    private static void bindCriteria(PreparedStatement ps, Criteria criteria) throws SQLException {
+        List<Object> parameters = criteria.parameters();
+
+        for (int i = 0; i < parameters.size(); i++) {
+            ps.setObject(i + 1, parameters.get(i));
+        }
+    }
+
+    public Stream<T> streamAll() {
+        return streamAll(fetchSize);
+    }
+
+    /**
+     * Streams all the entities over a forward-only cursor, reading fetchSize rows per round trip,
+     * so memory doesn't depend on the table size. Uses the STREAM_ALL SQL, or FIND_ALL if there's none.
+     * The stream holds an open statement, close it when done, e.g. with try-with-resources.
+     */
+    public Stream<T> streamAll(int fetchSize) {
+        CrudOperation operationType = sqlRegistry().isDefined(CrudOperation.STREAM_ALL) ? CrudOperation.STREAM_ALL : CrudOperation.FIND_ALL;
+        IdentityMap identityMap = UnitOfWork.currentIdentityMap(connectionProvider);
+
+        return stream(sql(operationType), fetchSize, ps -> { }, rs -> new EntityCursor<>(this, rs))
+                .map(entity -> prepareLoaded(List.of(entity), identityMap).get(0));
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("Fetch size must be positive: " + fetchSize);
+        }
+
+        this.fetchSize = fetchSize;
+    }
+
+    public long count() {
+        long count = 0;
+
+        try (ConnectionLease lease = connectionProvider.acquire()) {
+            PreparedStatement ps = lease.statementCache().prepare(sql(CrudOperation.COUNT));
+
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    count = rs.getLong(1);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        return count;
+    }
+
+    /**
+     * @return number of deleted rows, 0 if the entity wasn't there
+     */
+    public int delete(T entity) {
+        long id = getRequiredIdByAnnotation(entity);
+
+        try (ConnectionLease lease = connectionProvider.acquire()) {
+            if (!softDelete) {
+                beforeDelete(lease, List.of(id));
+            }
+
+            PreparedStatement ps = lease.statementCache().prepare(sql(softDelete ? CrudOperation.SOFT_DELETE_ONE : CrudOperation.DELETE_ONE));
+
+            ps.setLong(1, id);
+
+            int affectedRecordCount = ps.executeUpdate();
+            forgetInUnitOfWork(entity);
+            entityWritten(entity);
+
+            return affectedRecordCount;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void rememberInUnitOfWork(T entity) {
+        IdentityMap identityMap = UnitOfWork.currentIdentityMap(connectionProvider);
+
+        if (identityMap != null) {
+            identityMap.put(entity);
+        }
+    }
+
+    private void forgetInUnitOfWork(T entity) {
+        IdentityMap identityMap = UnitOfWork.currentIdentityMap(connectionProvider);
+
+        if (identityMap != null) {
+            identityMap.remove(entity);
+        }
+    }
+
+    private Long getIdByAnnotation(T entity) {
+        return idAccessorOf(entity).getId(entity);
+    }
+
+    private long getRequiredIdByAnnotation(T entity) {
+        Long id = getIdByAnnotation(entity);
+
+        if (id == null) {
+            throw new IllegalArgumentException("Entity has no ID, it was never saved: " + entity);
+        }
+
+        return id;
+    }
+
+    private void setIdByAnnotation(Long id, T entity) {
+        idAccessorOf(entity).setId(entity, id);
+    }
+
+    /**
+     * The accessor of the entity class is held on to, the per-class lookup costs more than reading the ID does.
+     */
+    private IdAccessor idAccessorOf(T entity) {
+        return entity.getClass() == entityClass ? idAccessor : IdAccessor.of(entity.getClass());
+    }
+
+    /**
+     * @return number of deleted rows
+     */
+    @SafeVarargs
+    public final long delete(T...entities) { // T[] entities
+        // only the elements are read, the array itself never leaves the method
+        List<Long> ids = new ArrayList<>(entities.length);
+
+        for (T entity : entities) {
+            ids.add(getRequiredIdByAnnotation(entity));
+        }
+
+        return deleteAllById(ids);
+    }
+
+    public long deleteAllById(Collection<Long> ids) {
+        return deleteAllById(ids.stream());
+    }
+
+    /**
+     * Deletes the entities with the given IDs without loading them. The IDs are bound as an array
+     * ({@link CrudOperation#DELETE_MANY}), {@value #MULTI_GET_CHUNK_SIZE} at a time, so one cached statement
+     * serves any number of them and the stream is never held in memory as a whole.
+     * In {@link #setSoftDelete(boolean) soft-delete mode} the rows are only flagged ({@link CrudOperation#SOFT_DELETE_MANY}).
+     * @return number of deleted rows
+     */
+    public long deleteAllById(Stream<Long> ids) {
+        return deleteInChunks(ids, softDelete);
+    }
+
+    private long deleteInChunks(Stream<Long> ids, boolean soft) {
+        long affectedRecordCount = 0;
+
+        try (ConnectionLease lease = connectionProvider.acquire()) {
+            PreparedStatement ps = lease.statementCache().prepare(sql(soft ? CrudOperation.SOFT_DELETE_MANY : CrudOperation.DELETE_MANY));
+            Iterator<Long> iterator = ids.iterator();
+            List<Long> chunk = new ArrayList<>(MULTI_GET_CHUNK_SIZE);
+
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+
+                if (chunk.size() == MULTI_GET_CHUNK_SIZE || !iterator.hasNext()) {
+                    if (!soft) {
+                        beforeDelete(lease, chunk);
+                    }
+
+                    ps.setArray(1, lease.connection().createArrayOf("BIGINT", chunk.toArray()));
+                    affectedRecordCount += ps.executeUpdate();
+
+                    chunk.forEach(this::entityDeleted);
+                    chunk.clear();
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        return affectedRecordCount;
+    }
+
+    public boolean isSoftDelete() {
+        return softDelete;
+    }
+
+    /**
+     * In soft-delete mode delete() and deleteAllById() only flag the rows as deleted, the finders and count() skip them,
+     * and {@link #purgeDeleted(int)} removes them for good later on, e.g. from a {@link SoftDeletePurger}.
+     * @throws IllegalStateException if the repository has no SQL for {@link CrudOperation#SOFT_DELETE_ONE} and {@link CrudOperation#SOFT_DELETE_MANY}
+     */
+    public void setSoftDelete(boolean softDelete) {
+        if (softDelete && !(sqlRegistry().isDefined(CrudOperation.SOFT_DELETE_ONE) && sqlRegistry().isDefined(CrudOperation.SOFT_DELETE_MANY))) {
+            throw new IllegalStateException("Soft delete isn't supported by " + getClass().getSimpleName());
+        }
+
+        this.softDelete = softDelete;
+    }
+
+    /**
+     * Deletes up to limit of the rows flagged by a soft delete ({@link CrudOperation#FIND_DELETED_IDS}), in one transaction
+     * unless the caller already runs one.
+     * @return number of deleted rows, less than limit once there's nothing left to purge
+     */
+    public long purgeDeleted(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Purge limit must be positive: " + limit);
+        }
+
+        try (ConnectionLease lease = connectionProvider.acquire()) {
+            List<Long> ids = new ArrayList<>();
+            PreparedStatement ps = lease.statementCache().prepare(sql(CrudOperation.FIND_DELETED_IDS));
+
+            ps.setInt(1, limit);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                }
+            }
+
+            if (ids.isEmpty()) {
+                return 0;
+            }
+
+            Connection connection = lease.connection();
+            boolean autoCommit = connection.getAutoCommit();
+
+            if (!autoCommit) {
+                return deleteInChunks(ids.stream(), false);
+            }
+
+            connection.setAutoCommit(false);
+            boolean committed = false;
+
+            try {
+                long purgedCount = deleteInChunks(ids.stream(), false);
+                connection.commit();
+                committed = true;
+
+                return purgedCount;
+            } catch (RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+                lease.transactionEnded(committed);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Writes the columns of the entity that changed since it was loaded, nothing if none did.
+     * See {@link #updateAll(Iterable)}.
+     */
+    public void update(T entity) {
+        updateAll(List.of(entity));
+    }
+
+    /**
+     * Updates the entities with JDBC batches of up to batchSize statements, one per set of changed columns:
+     * an entity found by this repository is compared with what was read ({@link #getUpdatableColumns(Object)}),
+     * and only the columns that differ are written. Entities without changes are skipped.
+     * Entities that weren't loaded are written as a whole, with the UPDATE SQL if there's one.
+     * <p>
+     * Tracking only covers the entities whose snapshot is still alive: snapshots are kept per repository, by identity,
+     * and only as long as the entity is. An instance this repository read with dirty tracking on has one; a copy of it,
+     * an equal instance built by the caller or read by another repository doesn't, and is written as a whole.
+     * @return number of entities written
+     */
+    public int updateAll(Iterable<T> entities) {
+        Map<Long, List<T>> entitiesByColumns = new LinkedHashMap<>();
+        Map<T, Object[]> valuesByEntity = new IdentityHashMap<>();
+
+        for (T entity : entities) {
+            Object[] values = getUpdatableColumns(entity).values().toArray();
+            long columns = changedColumns(entity, values);
+
+            if (columns != 0) {
+                entitiesByColumns.computeIfAbsent(columns, k -> new ArrayList<>()).add(entity);
+                valuesByEntity.put(entity, values);
+            }
+        }
+
+        int updatedCount = 0;
+
+        try (ConnectionLease lease = connectionProvider.acquire()) {
+            for (Map.Entry<Long, List<T>> group : entitiesByColumns.entrySet()) {
+                long columns = group.getKey();
+                List<T> groupEntities = group.getValue();
+                PreparedStatement ps = lease.statementCache().prepare(
+                        columns == MAP_FOR_UPDATE ? sql(CrudOperation.UPDATE) : updateSql(columns, groupEntities.get(0))
+                );
+
+                for (int from = 0; from < groupEntities.size(); from += batchSize) {
+                    List<T> batch = groupEntities.subList(from, Math.min(from + batchSize, groupEntities.size()));
+
+                    for (T entity : batch) {
+                        if (columns == MAP_FOR_UPDATE) {
+                            mapForUpdate(entity, ps);
+                        } else {
+                            bindChangedColumns(ps, columns, valuesByEntity.get(entity), getRequiredIdByAnnotation(entity));
+                        }
+
+                        ps.addBatch();
+                    }
+
+                    ps.executeBatch();
+                    updatedCount += batch.size();
+
+                    for (T entity : batch) {
+                        takeSnapshot(entity);
+                        entityWritten(entity);
+                    }
+
+                    if (commitPerBatch && !lease.connection().getAutoCommit()) {
+                        lease.connection().commit();
+                        lease.transactionEnded(true);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        return updatedCount;
+    }
+
+    /**
+     * @return bit mask of the columns that differ from the snapshot, all of them if there's no snapshot,
+     * or {@link #MAP_FOR_UPDATE} if the entity has to be written with mapForUpdate()
+     */
+    private long changedColumns(T entity, Object[] values) {
+        if (values.length == 0) {
+            return MAP_FOR_UPDATE;
+        }
+
+        if (values.length >= Long.SIZE) {
+            // the mask of all 64 would be MAP_FOR_UPDATE
+            throw new IllegalStateException("Dirty tracking supports up to 63 columns, got " + values.length);
+        }
+
+        Object[] snapshot = dirtyTracking ? snapshots.get(entity) : null;
+
+        if (snapshot == null) {
+            return sqlRegistry().isDefined(CrudOperation.UPDATE) ? MAP_FOR_UPDATE : -1L >>> (Long.SIZE - values.length);
+        }
+
+        long columns = 0;
+
+        for (int i = 0; i < values.length; i++) {
+            if (!sameValue(snapshot[i], values[i])) {
+                columns |= 1L << i;
+            }
+        }
+
+        return columns;
+    }
+
+    private static boolean sameValue(Object before, Object after) {
+        if (before instanceof BigDecimal beforeDecimal && after instanceof BigDecimal afterDecimal) {
+            // 100 and 100.00 are the same salary
+            return beforeDecimal.compareTo(afterDecimal) == 0;
+        }
+
+        return Objects.equals(before, after);
+    }
+
+    private String updateSql(long columns, T entity) {
+        return updateSqlByColumns.computeIfAbsent(columns, k -> {
+            List<String> columnNames = new ArrayList<>(getUpdatableColumns(entity).keySet());
+            StringBuilder sql = new StringBuilder("UPDATE ").append(getTableName()).append(" SET ");
+            String separator = "";
+
+            for (int i = 0; i < columnNames.size(); i++) {
+                if ((columns & 1L << i) != 0) {
+                    sql.append(separator).append(columnNames.get(i)).append(" = ?");
+                    separator = ", ";
+                }
+            }
+
+            return sql.append(" WHERE ID = ?").toString();
+        });
+    }
+
+    private static void bindChangedColumns(PreparedStatement ps, long columns, Object[] values, long id) throws SQLException {
+        int parameterIndex = 1;
+
+        for (int i = 0; i < values.length; i++) {
+            if ((columns & 1L << i) != 0) {
+                ps.setObject(parameterIndex++, values[i]);
+            }
+        }
+
+        ps.setLong(parameterIndex, id);
+    }
+
+    /**
+     * Remembers the column values of an entity as read from the database, so an update writes only what changed since.
+     * Called for every entity the finders read, subclasses call it for the entities they read themselves.
+     * The snapshot is held weakly for this very instance, see {@link #updateAll(Iterable)}.
+     */
+    protected void takeSnapshot(T entity) {
+        if (!dirtyTracking) {
+            return;
+        }
+
+        Map<String, Object> columns = getUpdatableColumns(entity);
+
+        if (!columns.isEmpty()) {
+            snapshots.put(entity, columns.values().toArray());
+        }
+    }
+
+    public boolean isDirtyTracking() {
+        return dirtyTracking;
+    }
+
+    /**
+     * On by default. Turning it off saves a snapshot per loaded entity, e.g. for a big streamAll(),
+     * and makes every update write all the columns. Entities read while it was off have no snapshot
+     * and are written as a whole even after it's turned on again.
+     */
+    public void setDirtyTracking(boolean dirtyTracking) {
+        this.dirtyTracking = dirtyTracking;
+    }
+
+    public EntityCache<T> getEntityCache() {
+        return entityCache;
+    }
+
+    /**
+     * Turns on the second-level cache for findById() and findAllById(), null turns it off.
+     * The cache is invalidated by saves, updates and deletes made through this repository, once more when their
+     * transaction ends. Callers get {@link #copyOf(Object) copies} of the cached entities.
+     */
+    public void setEntityCache(EntityCache<T> entityCache) {
+        this.entityCache = entityCache;
+    }
+
+    /**
+     * @param listener called with the ID of every entity this repository saves, updates or deletes,
+     * e.g. to invalidate cached entities that refer to it
+     */
+    public void addWriteListener(Consumer<Long> listener) {
+        writeListeners.add(listener);
+    }
+
+    /**
+     * Called once an entity is saved, updated or deleted. Invalidates it in the entity cache and notifies the write listeners.
+     */
+    protected void entityWritten(T entity) {
+        Long id = getIdByAnnotation(entity);
+
+        if (entityCache != null) {
+            invalidateCached(() -> entityCache.invalidate(id));
+        }
+
+        writeListeners.forEach(listener -> listener.accept(id));
+    }
+
+    /**
+     * Called once an entity is deleted by ID, without being loaded. Drops it from the unit of work and the entity cache,
+     * then notifies the write listeners.
+     */
+    protected void entityDeleted(Long id) {
+        IdentityMap identityMap = UnitOfWork.currentIdentityMap(connectionProvider);
+
+        if (identityMap != null) {
+            identityMap.remove(entityClass, id);
+        }
+
+        if (entityCache != null) {
+            invalidateCached(() -> entityCache.invalidate(id));
+        }
+
+        writeListeners.forEach(listener -> listener.accept(id));
+    }
+
+    /**
+     * Runs the invalidation of cached entities now and, inside a transaction, again once it has ended:
+     * before the commit other threads still load the state before the write and may cache it.
+     */
+    protected void invalidateCached(Runnable invalidation) {
+        invalidation.run();
+
+        try {
+            connectionProvider.afterTransaction(invalidation);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private boolean isInTransaction() {
+        try {
+            return connectionProvider.isInTransaction();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Called before the entities with the IDs are deleted, on the same connection,
+     * e.g. to take care of the rows that refer to them.
+     */
+    protected void beforeDelete(ConnectionLease lease, List<Long> ids) throws SQLException { }
+
+    protected ConnectionProvider getConnectionProvider() {
+        return connectionProvider;
+    }
+
+    /**
+     * @return statement cache of the repository's connection. A pooled repository has one per connection,
+     * see {@link ConnectionPool#getMetrics()} for those.
+     */
+    public StatementCache getStatementCache() {
+        if (connectionProvider instanceof SingleConnectionProvider singleConnectionProvider) {
+            return singleConnectionProvider.statementCache();
+        }
+
+        throw new IllegalStateException("Pooled repository has a statement cache per connection, see ConnectionPool.getMetrics()");
+    }
+
+    /**
+     * Closes the cached statements of this repository. The connection stays open, it's owned by the caller.
+     * A pool is owned by the caller too, so for a pooled repository it does nothing.
+     */
+    @Override
+    public void close() {
+        if (connectionProvider instanceof SingleConnectionProvider singleConnectionProvider) {
+            singleConnectionProvider.statementCache().close();
+        }
+    }
+
+    /**
+     * @return values of the columns an update writes, by column name in the same order every time, e.g. FIRST_NAME, LAST_NAME.
+     * The values are bound with setObject(). Empty (the default) turns dirty tracking off for the repository.
+     */
+    protected Map<String, Object> getUpdatableColumns(T entity) {
+        return Map.of();
+    }
+
+    /**
+     * @return table of the UPDATE statements generated for dirty tracking, its key column is ID
+     */
+    protected String getTableName() {
+        throw new RuntimeException("Table not defined");
+    }
+
+    /**
+     * @return the attributes find(Criteria) may filter and sort by, none by default
+     */
+    protected List<Attribute<?>> getQueryAttributes() {
+        return List.of();
+    }
+
+    protected String getUpdateSQL() {
+        throw new UnsupportedOperationException("SQL not defined");
+    };
+
+    protected String getDeleteSQL(){
+        throw new UnsupportedOperationException("SQL not defined");
+    };
+
+    /**
+     * @return SQL that deletes by an array of IDs, bound as its only parameter, e.g.
+     * "DELETE FROM PEOPLE WHERE ID = ANY(?)"
+     */
+    protected String getDeleteInSQL(){
+        throw new UnsupportedOperationException("SQL not defined");
+    };
+
+    protected String getCountSQL(){
+        throw new UnsupportedOperationException("SQL not defined");
+    };
+
+    /**
+     *
+     * @return SQL for keyset pagination like:
+     * "SELECT ... FROM PEOPLE WHERE ID > ? ORDER BY ID FETCH FIRST ? ROWS ONLY"
+     * The first parameter binds to the ID to start after, the second one to the number of rows.
+     */
+    protected String getFindPageSQL(){
+        throw new UnsupportedOperationException("SQL not defined");
+    };
+
+    protected String getFindAllSQL(){
+        throw new UnsupportedOperationException("SQL not defined");
+    };
+
+    /**
+     *
+     * @return Returns a String that represents the SQL needed to retrieve one entity.
+     * The SQL must contain one SQL parameter, i.e. "?", thaw will bind to the
+     * entity's ID.
+     */
+    protected String getFindByIdSQL() {
+        throw new UnsupportedOperationException("SQL not defined");
+    };
+
+    String getSaveSQL() {
+        throw new UnsupportedOperationException("SQL not defined");
+    };
+
+    protected void postSave(T entity, long id) { }
+
+    /**
+     * Called by saveAll() before a batch is mapped, e.g. to save associated entities the batch refers to.
+     */
+    protected void preSaveAll(List<T> batch) { }
+
+    /**
+     * Called by saveAll() once the IDs of the batch are set. By default calls postSave() for every entity.
+     */
+    protected void postSaveAll(List<T> batch) {
+        for (T entity : batch) {
+            postSave(entity, getIdByAnnotation(entity));
+        }
+    }
+
+    /**
+     * Called with the entities a find method has read, before they're returned, e.g. to set up lazy loading.
+     * Entities of {@link #streamAll()} come one at a time.
+     */
+    protected void afterLoad(List<T> entities) { }
+
+    /**
+     * Copies an entity of the entity cache for a caller, so changing it doesn't change what everyone else gets.
+     * Entities that can't be changed, e.g. records, are returned as they are.
+     */
+    protected T copyOf(T entity) {
+        return entity;
+    }
+
+    /**
+     * Inside a {@link UnitOfWork} swaps the loaded entities for the instances its identity map already knows
+     * and adds the others to it, so a finder never hands out a second instance of an entity.
+     * {@link #afterLoad(List)} is called for the entities new to the map only.
+     * @param identityMap map of the current unit of work, null outside of one
+     * @return the entities to hand out, in the order they were loaded
+     */
+    protected List<T> prepareLoaded(List<T> entities, IdentityMap identityMap) {
+        if (identityMap == null) {
+            afterLoad(entities);
+
+            return entities;
+        }
+
+        List<T> prepared = new ArrayList<>(entities.size());
+        List<T> attached = new ArrayList<>();
+
+        for (T entity : entities) {
+            T known = attach(entity, identityMap);
+
+            prepared.add(known);
+
+            if (known == entity) {
+                attached.add(entity);
+            }
+        }
+
+        afterLoad(attached);
+
+        return prepared;
+    }
+
+    /**
+     * Adds an entity loaded inside a {@link UnitOfWork} to its identity map.
+     * @return the instance to hand out, the one already in the map if there is one
+     */
+    protected T attach(T entity, IdentityMap identityMap) {
+        return identityMap.intern(entity);
+    }
+
+    /**
+     * Extracts an entity from the current row. The cursor is moved forward by the caller only.
+     */
+    abstract T extractEntityFromResultSet(ResultSet rs) throws SQLException;
+
+    /**
+     * Called for every row that follows an extracted entity.
+     * @return true if the row belongs to the entity (its data is then added to the entity),
+     * false if the row starts the next entity. By default every row is an entity of its own.
+     */
+    protected boolean mergeRowIntoEntity(T entity, ResultSet rs) throws SQLException {
+        return false;
+    }
 
     abstract void mapForSave(T entity, PreparedStatement ps) throws SQLException;
 
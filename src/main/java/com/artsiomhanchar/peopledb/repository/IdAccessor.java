@@ -0,0 +1,186 @@
+package com.artsiomhanchar.peopledb.repository;
+
+import com.artsiomhanchar.peopledb.annotation.Id;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Reads and writes the {@link Id} field of an entity class. The field lookup and the access checks are done once per class.
+ * <p>
+ * If the class has an accessor for the ID, a no-argument method annotated with {@link Id} or the getter and setter
+ * named after the field, a {@link Function} and a {@link BiConsumer} calling it are spun with {@link LambdaMetafactory}.
+ * The JIT inlines those like the accessor itself, so reading the ID costs about what a field access does.
+ * Without one, e.g. for the final Address.id there's no setter of, the field is accessed through method handles
+ * instead, which the JIT can't inline as they aren't constants.
+ */
+final class IdAccessor {
+    private static final ClassValue<IdAccessor> ACCESSORS = new ClassValue<>() {
+        @Override
+        protected IdAccessor computeValue(Class<?> entityClass) {
+            return new IdAccessor(entityClass);
+        }
+    };
+
+    private final Class<?> entityClass;
+    private final Function<Object, Object> getter;
+    private final BiConsumer<Object, Object> setter;
+
+    private IdAccessor(Class<?> entityClass) {
+        this.entityClass = entityClass;
+
+        Field field = findIdField(entityClass);
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            Method getterMethod = findGetter(entityClass, field);
+            Method setterMethod = findSetter(entityClass, field);
+
+            // setAccessible() lets us write final fields like Address.id, the same way Field.set() did
+            field.setAccessible(true);
+
+            this.getter = getterMethod != null ? spinGetter(lookup, getterMethod) : fieldGetter(lookup, field);
+            this.setter = setterMethod != null ? spinSetter(lookup, setterMethod) : fieldSetter(lookup, field);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Unable to access ID field of " + entityClass.getName(), e);
+        }
+    }
+
+    static IdAccessor of(Class<?> entityClass) {
+        return ACCESSORS.get(entityClass);
+    }
+
+    /**
+     * @return the entity's ID or null if it hasn't been saved yet
+     */
+    Long getId(Object entity) {
+        Object id;
+
+        try {
+            id = getter.apply(entity);
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("Unable to get ID field value of " + entityClass.getSimpleName(), e);
+        }
+
+        return id == null || id instanceof Long ? (Long) id : Long.valueOf(((Number) id).longValue());
+    }
+
+    void setId(Object entity, Long id) {
+        try {
+            setter.accept(entity, id);
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("Unable to set ID field value of " + entityClass.getSimpleName(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> spinGetter(MethodHandles.Lookup lookup, Method method) throws Throwable {
+        MethodHandle target = lookup.unreflect(method);
+        CallSite callSite = LambdaMetafactory.metafactory(lookup, "apply",
+                MethodType.methodType(Function.class),
+                MethodType.methodType(Object.class, Object.class),
+                target,
+                MethodType.methodType(method.getReturnType(), method.getDeclaringClass()).wrap());
+
+        return (Function<Object, Object>) callSite.getTarget().invokeExact();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Object, Object> spinSetter(MethodHandles.Lookup lookup, Method method) throws Throwable {
+        MethodHandle target = lookup.unreflect(method);
+        CallSite callSite = LambdaMetafactory.metafactory(lookup, "accept",
+                MethodType.methodType(BiConsumer.class),
+                MethodType.methodType(void.class, Object.class, Object.class),
+                target,
+                MethodType.methodType(void.class, method.getDeclaringClass(), MethodType.methodType(method.getParameterTypes()[0]).wrap().returnType()));
+
+        return (BiConsumer<Object, Object>) callSite.getTarget().invokeExact();
+    }
+
+    private static Function<Object, Object> fieldGetter(MethodHandles.Lookup lookup, Field field) throws IllegalAccessException {
+        MethodHandle handle = lookup.unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class));
+
+        return entity -> {
+            try {
+                return (Object) handle.invokeExact(entity);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    private static BiConsumer<Object, Object> fieldSetter(MethodHandles.Lookup lookup, Field field) throws IllegalAccessException {
+        MethodHandle handle = lookup.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, Object.class));
+
+        return (entity, id) -> {
+            try {
+                handle.invokeExact(entity, id);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    /**
+     * @return a public no-argument method of the ID's type annotated with {@link Id} or named like getId(), or null
+     */
+    private static Method findGetter(Class<?> entityClass, Field field) {
+        String getterName = "get" + capitalize(field.getName());
+
+        for (Method method : entityClass.getMethods()) {
+            if (isAccessor(method, field.getType()) && method.getParameterCount() == 0
+                    && (method.isAnnotationPresent(Id.class) || method.getName().equals(getterName))) {
+                return method;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return a public method named like setId() taking the ID's type, or null
+     */
+    private static Method findSetter(Class<?> entityClass, Field field) {
+        try {
+            Method method = entityClass.getMethod("set" + capitalize(field.getName()), field.getType());
+
+            return isAccessor(method, void.class) ? method : null;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static boolean isAccessor(Method method, Class<?> returnType) {
+        return method.getReturnType() == returnType
+                && !Modifier.isStatic(method.getModifiers())
+                && Modifier.isPublic(method.getDeclaringClass().getModifiers());
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static Field findIdField(Class<?> entityClass) {
+        for (Class<?> type = entityClass; type != null && type != Object.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                if (field.isAnnotationPresent(Id.class)) {
+                    return field;
+                }
+            }
+        }
+
+        throw new IllegalStateException("No ID annotated field found in " + entityClass.getName());
+    }
+}
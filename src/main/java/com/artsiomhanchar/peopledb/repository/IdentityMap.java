@@ -0,0 +1,72 @@
+package com.artsiomhanchar.peopledb.repository;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One instance per entity class and {@link com.artsiomhanchar.peopledb.annotation.Id}, the first-level cache
+ * of a {@link UnitOfWork}. Like the unit of work itself it's used by one thread only.
+ */
+public final class IdentityMap {
+    private final Map<Class<?>, Map<Long, Object>> entities = new HashMap<>();
+
+    public <E> E get(Class<E> entityClass, Long id) {
+        Map<Long, Object> byId = entities.get(entityClass);
+
+        return byId == null || id == null ? null : entityClass.cast(byId.get(id));
+    }
+
+    /**
+     * @return the instance already known for the entity's class and ID, or the entity itself after it's added.
+     * Entities without an ID are returned as they are.
+     */
+    @SuppressWarnings("unchecked")
+    public <E> E intern(E entity) {
+        if (entity == null) {
+            return null;
+        }
+
+        Long id = IdAccessor.of(entity.getClass()).getId(entity);
+
+        if (id == null) {
+            return entity;
+        }
+
+        Object known = entities.computeIfAbsent(entity.getClass(), k -> new HashMap<>()).putIfAbsent(id, entity);
+
+        return known != null ? (E) known : entity;
+    }
+
+    public void put(Object entity) {
+        Long id = IdAccessor.of(entity.getClass()).getId(entity);
+
+        if (id != null) {
+            entities.computeIfAbsent(entity.getClass(), k -> new HashMap<>()).put(id, entity);
+        }
+    }
+
+    public void remove(Object entity) {
+        Long id = IdAccessor.of(entity.getClass()).getId(entity);
+        Map<Long, Object> byId = entities.get(entity.getClass());
+
+        if (id != null && byId != null) {
+            byId.remove(id);
+        }
+    }
+
+    public void remove(Class<?> entityClass, Long id) {
+        Map<Long, Object> byId = entities.get(entityClass);
+
+        if (byId != null) {
+            byId.remove(id);
+        }
+    }
+
+    public int size() {
+        return entities.values().stream().mapToInt(Map::size).sum();
+    }
+
+    public void clear() {
+        entities.clear();
+    }
+}
@@ -0,0 +1,15 @@
+package com.artsiomhanchar.peopledb.repository;
+
+import java.util.List;
+
+/**
+ * One page of a keyset (seek) pagination.
+ * @param content entities of the page, ordered by ID
+ * @param nextAfterId continuation token, pass it to findPage() to get the next page; null on the last page
+ */
+public record Page<T>(List<T> content, Long nextAfterId) {
+
+    public boolean hasNext() {
+        return nextAfterId != null;
+    }
+}
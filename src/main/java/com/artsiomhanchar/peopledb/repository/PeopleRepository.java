@@ -1,27 +1,41 @@
 package com.artsiomhanchar.peopledb.repository;
 
 import com.artsiomhanchar.peopledb.annotation.SQL;
+import com.artsiomhanchar.peopledb.cache.EntityCache;
 import com.artsiomhanchar.peopledb.model.Address;
 import com.artsiomhanchar.peopledb.model.CrudOperation;
 import com.artsiomhanchar.peopledb.model.Person;
+import com.artsiomhanchar.peopledb.model.PersonSummary;
 import com.artsiomhanchar.peopledb.model.Region;
+import com.artsiomhanchar.peopledb.model.SalaryStatistics;
+import com.artsiomhanchar.peopledb.pool.ConnectionLease;
+import com.artsiomhanchar.peopledb.pool.ConnectionProvider;
 
 import java.math.BigDecimal;
 import java.sql.*;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
 public class PeopleRepository extends GrudRepository<Person> {
     private AddressRepository addressRepository = null;
 
     public static final String SAVE_PERSON_SQL = """
-            INSERT INTO PEOPLE 
-            (FIRST_NAME, LAST_NAME, DOB, SALARY, EMAIL, HOME_ADDRESS, BUSINESS_ADDRESS, PARENT_ID) 
-            VALUES(?, ?, ?, ?, ?, ?, ?, ?)
+            INSERT INTO PEOPLE
+            (FIRST_NAME, LAST_NAME, DOB, SALARY, EMAIL, HOME_ADDRESS, BUSINESS_ADDRESS, PARENT_ID, DELETE_FLAG)
+            VALUES(?, ?, ?, ?, ?, ?, ?, ?, FALSE)
             """;
 //    public static final String FIND_BY_ID_SQL = """
 //            SELECT
@@ -34,34 +48,148 @@ public class PeopleRepository extends GrudRepository<Person> {
 //            WHERE P.ID=?
 //            """;
     public static final String FIND_BY_ID_SQL = """
-            SELECT 
+            SELECT
             PARENT.ID AS PARENT_ID, PARENT.FIRST_NAME AS PARENT_FIRST_NAME, PARENT.LAST_NAME AS PARENT_LAST_NAME, PARENT.DOB AS PARENT_DOB, PARENT.SALARY AS PARENT_SALARY, PARENT.EMAIL AS PARENT_EMAIL,
             CHILD.ID AS CHILD_ID, CHILD.FIRST_NAME AS CHILD_FIRST_NAME, CHILD.LAST_NAME AS CHILD_LAST_NAME, CHILD.DOB AS CHILD_DOB, CHILD.SALARY AS CHILD_SALARY, CHILD.EMAIL AS CHILD_EMAIL,
             HOME_A.ID AS HOME_A_ID, HOME_A.STREET_ADDRESS AS HOME_A_STREET_ADDRESS, HOME_A.ADDRESS2 AS HOME_A_ADDRESS2, HOME_A.CITY AS HOME_A_CITY, HOME_A.STATE AS HOME_A_STATE, HOME_A.POSTCODE AS HOME_A_POSTCODE, HOME_A.COUNTY AS HOME_A_COUNTY, HOME_A.REGION AS HOME_A_REGION, HOME_A.COUNTRY AS HOME_A_COUNTRY,
             BUSINESS_A.ID AS BUSINESS_A_ID, BUSINESS_A.STREET_ADDRESS AS BUSINESS_A_STREET_ADDRESS, BUSINESS_A.ADDRESS2 AS BUSINESS_A_ADDRESS2, BUSINESS_A.CITY AS BUSINESS_A_CITY, BUSINESS_A.STATE AS BUSINESS_A_STATE, BUSINESS_A.POSTCODE AS BUSINESS_A_POSTCODE, BUSINESS_A.COUNTY AS BUSINESS_A_COUNTY, BUSINESS_A.REGION AS BUSINESS_A_REGION, BUSINESS_A.COUNTRY AS BUSINESS_A_COUNTRY
             FROM PEOPLE AS PARENT
-            LEFT OUTER JOIN PEOPLE AS CHILD ON PARENT.ID = CHILD.PARENT_ID
+            LEFT OUTER JOIN PEOPLE AS CHILD ON PARENT.ID = CHILD.PARENT_ID AND CHILD.DELETE_FLAG = FALSE
             LEFT OUTER JOIN ADDRESSES AS HOME_A ON PARENT.HOME_ADDRESS = HOME_A.ID
             LEFT OUTER JOIN ADDRESSES AS BUSINESS_A ON PARENT.BUSINESS_ADDRESS = BUSINESS_A.ID
-            WHERE PARENT.ID = ?
+            WHERE PARENT.ID = ? AND PARENT.DELETE_FLAG = FALSE
             """;
     public static final String FIND_ALL_SQL = """
-            SELECT 
-            PARENT.ID AS PARENT_ID, PARENT.FIRST_NAME AS PARENT_FIRST_NAME, PARENT.LAST_NAME AS PARENT_LAST_NAME, PARENT.DOB AS PARENT_DOB, PARENT.SALARY AS PARENT_SALARY, PARENT.EMAIL AS PARENT_EMAIL 
+            SELECT
+            PARENT.ID AS PARENT_ID, PARENT.FIRST_NAME AS PARENT_FIRST_NAME, PARENT.LAST_NAME AS PARENT_LAST_NAME, PARENT.DOB AS PARENT_DOB, PARENT.SALARY AS PARENT_SALARY, PARENT.EMAIL AS PARENT_EMAIL
             FROM PEOPLE AS PARENT
+            WHERE PARENT.DELETE_FLAG = FALSE
             FETCH FIRST 100 ROWS ONLY
             """;
-    public static final String SELECT_COUNT_SQL = "SELECT COUNT(*) FROM PEOPLE";
+    public static final String STREAM_ALL_SQL = """
+            SELECT
+            PARENT.ID AS PARENT_ID, PARENT.FIRST_NAME AS PARENT_FIRST_NAME, PARENT.LAST_NAME AS PARENT_LAST_NAME, PARENT.DOB AS PARENT_DOB, PARENT.SALARY AS PARENT_SALARY, PARENT.EMAIL AS PARENT_EMAIL
+            FROM PEOPLE AS PARENT
+            WHERE PARENT.DELETE_FLAG = FALSE
+            """;
+    public static final String FIND_BY_ID_WITHOUT_ASSOCIATIONS_SQL = """
+            SELECT
+            PARENT.ID AS PARENT_ID, PARENT.FIRST_NAME AS PARENT_FIRST_NAME, PARENT.LAST_NAME AS PARENT_LAST_NAME, PARENT.DOB AS PARENT_DOB, PARENT.SALARY AS PARENT_SALARY, PARENT.EMAIL AS PARENT_EMAIL
+            FROM PEOPLE AS PARENT
+            WHERE PARENT.ID = ? AND PARENT.DELETE_FLAG = FALSE
+            """;
+    public static final String FIND_ASSOCIATIONS_SQL = """
+            SELECT
+            PARENT.ID AS PARENT_ID, PARENT.FIRST_NAME AS PARENT_FIRST_NAME, PARENT.LAST_NAME AS PARENT_LAST_NAME, PARENT.DOB AS PARENT_DOB, PARENT.SALARY AS PARENT_SALARY, PARENT.EMAIL AS PARENT_EMAIL,
+            CHILD.ID AS CHILD_ID, CHILD.FIRST_NAME AS CHILD_FIRST_NAME, CHILD.LAST_NAME AS CHILD_LAST_NAME, CHILD.DOB AS CHILD_DOB, CHILD.SALARY AS CHILD_SALARY, CHILD.EMAIL AS CHILD_EMAIL,
+            HOME_A.ID AS HOME_A_ID, HOME_A.STREET_ADDRESS AS HOME_A_STREET_ADDRESS, HOME_A.ADDRESS2 AS HOME_A_ADDRESS2, HOME_A.CITY AS HOME_A_CITY, HOME_A.STATE AS HOME_A_STATE, HOME_A.POSTCODE AS HOME_A_POSTCODE, HOME_A.COUNTY AS HOME_A_COUNTY, HOME_A.REGION AS HOME_A_REGION, HOME_A.COUNTRY AS HOME_A_COUNTRY,
+            BUSINESS_A.ID AS BUSINESS_A_ID, BUSINESS_A.STREET_ADDRESS AS BUSINESS_A_STREET_ADDRESS, BUSINESS_A.ADDRESS2 AS BUSINESS_A_ADDRESS2, BUSINESS_A.CITY AS BUSINESS_A_CITY, BUSINESS_A.STATE AS BUSINESS_A_STATE, BUSINESS_A.POSTCODE AS BUSINESS_A_POSTCODE, BUSINESS_A.COUNTY AS BUSINESS_A_COUNTY, BUSINESS_A.REGION AS BUSINESS_A_REGION, BUSINESS_A.COUNTRY AS BUSINESS_A_COUNTRY
+            FROM PEOPLE AS PARENT
+            LEFT OUTER JOIN PEOPLE AS CHILD ON PARENT.ID = CHILD.PARENT_ID AND CHILD.DELETE_FLAG = FALSE
+            LEFT OUTER JOIN ADDRESSES AS HOME_A ON PARENT.HOME_ADDRESS = HOME_A.ID
+            LEFT OUTER JOIN ADDRESSES AS BUSINESS_A ON PARENT.BUSINESS_ADDRESS = BUSINESS_A.ID
+            WHERE PARENT.ID = ANY(?) AND PARENT.DELETE_FLAG = FALSE
+            ORDER BY PARENT.ID
+            """;
+    public static final String FIND_PAGE_SQL = """
+            SELECT
+            PARENT.ID AS PARENT_ID, PARENT.FIRST_NAME AS PARENT_FIRST_NAME, PARENT.LAST_NAME AS PARENT_LAST_NAME, PARENT.DOB AS PARENT_DOB, PARENT.SALARY AS PARENT_SALARY, PARENT.EMAIL AS PARENT_EMAIL
+            FROM PEOPLE AS PARENT
+            WHERE PARENT.DELETE_FLAG = FALSE AND PARENT.ID > ?
+            ORDER BY PARENT.ID
+            FETCH FIRST ? ROWS ONLY
+            """;
+    public static final String FIND_BY_CRITERIA_SQL = """
+            SELECT
+            PARENT.ID AS PARENT_ID, PARENT.FIRST_NAME AS PARENT_FIRST_NAME, PARENT.LAST_NAME AS PARENT_LAST_NAME, PARENT.DOB AS PARENT_DOB, PARENT.SALARY AS PARENT_SALARY, PARENT.EMAIL AS PARENT_EMAIL
+            FROM PEOPLE AS PARENT
+            WHERE PARENT.DELETE_FLAG = FALSE
+            """;
+    public static final String FIND_SUMMARIES_SQL = """
+            SELECT PARENT.ID AS PARENT_ID, PARENT.FIRST_NAME AS PARENT_FIRST_NAME, PARENT.LAST_NAME AS PARENT_LAST_NAME, PARENT.SALARY AS PARENT_SALARY
+            FROM PEOPLE AS PARENT
+            WHERE PARENT.DELETE_FLAG = FALSE
+            """;
+    public static final String FIND_SUMMARY_PAGE_SQL = """
+            SELECT PARENT.ID AS PARENT_ID, PARENT.FIRST_NAME AS PARENT_FIRST_NAME, PARENT.LAST_NAME AS PARENT_LAST_NAME, PARENT.SALARY AS PARENT_SALARY
+            FROM PEOPLE AS PARENT
+            WHERE PARENT.DELETE_FLAG = FALSE AND PARENT.ID > ?
+            ORDER BY PARENT.ID
+            FETCH FIRST ? ROWS ONLY
+            """;
+    public static final String FIND_TREE_SQL = """
+            WITH RECURSIVE TREE (ID, DEPTH) AS (
+                SELECT ID, 0 FROM PEOPLE WHERE ID = ? AND DELETE_FLAG = FALSE
+                UNION ALL
+                SELECT CHILD.ID, TREE.DEPTH + 1
+                FROM PEOPLE AS CHILD
+                JOIN TREE ON CHILD.PARENT_ID = TREE.ID
+                WHERE CHILD.DELETE_FLAG = FALSE AND TREE.DEPTH < ?
+            )
+            SELECT
+            PARENT.ID AS PARENT_ID, PARENT.FIRST_NAME AS PARENT_FIRST_NAME, PARENT.LAST_NAME AS PARENT_LAST_NAME, PARENT.DOB AS PARENT_DOB, PARENT.SALARY AS PARENT_SALARY, PARENT.EMAIL AS PARENT_EMAIL,
+            PARENT.PARENT_ID AS TREE_PARENT_ID
+            FROM TREE
+            JOIN PEOPLE AS PARENT ON PARENT.ID = TREE.ID
+            ORDER BY TREE.DEPTH, PARENT.ID
+            """;
+    public static final String FIND_TREE_WITH_ADDRESSES_SQL = """
+            WITH RECURSIVE TREE (ID, DEPTH) AS (
+                SELECT ID, 0 FROM PEOPLE WHERE ID = ? AND DELETE_FLAG = FALSE
+                UNION ALL
+                SELECT CHILD.ID, TREE.DEPTH + 1
+                FROM PEOPLE AS CHILD
+                JOIN TREE ON CHILD.PARENT_ID = TREE.ID
+                WHERE CHILD.DELETE_FLAG = FALSE AND TREE.DEPTH < ?
+            )
+            SELECT
+            PARENT.ID AS PARENT_ID, PARENT.FIRST_NAME AS PARENT_FIRST_NAME, PARENT.LAST_NAME AS PARENT_LAST_NAME, PARENT.DOB AS PARENT_DOB, PARENT.SALARY AS PARENT_SALARY, PARENT.EMAIL AS PARENT_EMAIL,
+            PARENT.PARENT_ID AS TREE_PARENT_ID,
+            HOME_A.ID AS HOME_A_ID, HOME_A.STREET_ADDRESS AS HOME_A_STREET_ADDRESS, HOME_A.ADDRESS2 AS HOME_A_ADDRESS2, HOME_A.CITY AS HOME_A_CITY, HOME_A.STATE AS HOME_A_STATE, HOME_A.POSTCODE AS HOME_A_POSTCODE, HOME_A.COUNTY AS HOME_A_COUNTY, HOME_A.REGION AS HOME_A_REGION, HOME_A.COUNTRY AS HOME_A_COUNTRY,
+            BUSINESS_A.ID AS BUSINESS_A_ID, BUSINESS_A.STREET_ADDRESS AS BUSINESS_A_STREET_ADDRESS, BUSINESS_A.ADDRESS2 AS BUSINESS_A_ADDRESS2, BUSINESS_A.CITY AS BUSINESS_A_CITY, BUSINESS_A.STATE AS BUSINESS_A_STATE, BUSINESS_A.POSTCODE AS BUSINESS_A_POSTCODE, BUSINESS_A.COUNTY AS BUSINESS_A_COUNTY, BUSINESS_A.REGION AS BUSINESS_A_REGION, BUSINESS_A.COUNTRY AS BUSINESS_A_COUNTRY
+            FROM TREE
+            JOIN PEOPLE AS PARENT ON PARENT.ID = TREE.ID
+            LEFT OUTER JOIN ADDRESSES AS HOME_A ON PARENT.HOME_ADDRESS = HOME_A.ID
+            LEFT OUTER JOIN ADDRESSES AS BUSINESS_A ON PARENT.BUSINESS_ADDRESS = BUSINESS_A.ID
+            ORDER BY TREE.DEPTH, PARENT.ID
+            """;
+    public static final String SELECT_COUNT_SQL = "SELECT COUNT(*) FROM PEOPLE WHERE DELETE_FLAG = FALSE";
     public static final String DELETE_SQL = "DELETE FROM PEOPLE WHERE ID=?";
-    public static final String DELETE_IN_SQL = "DELETE FROM PEOPLE WHERE ID IN (:ids)";
+    public static final String DELETE_IN_SQL = "DELETE FROM PEOPLE WHERE ID = ANY(?)";
+    public static final String SOFT_DELETE_SQL = "UPDATE PEOPLE SET DELETE_FLAG = TRUE WHERE ID = ?";
+    public static final String SOFT_DELETE_IN_SQL = "UPDATE PEOPLE SET DELETE_FLAG = TRUE WHERE ID = ANY(?)";
+    public static final String FIND_DELETED_IDS_SQL = "SELECT ID FROM PEOPLE WHERE DELETE_FLAG = TRUE ORDER BY ID FETCH FIRST ? ROWS ONLY";
+    public static final String DETACH_CHILDREN_SQL = "UPDATE PEOPLE SET PARENT_ID = NULL WHERE PARENT_ID = ANY(?)";
     public static final String UPDATE_SQL = "UPDATE PEOPLE SET FIRST_NAME=?, LAST_NAME=?, DOB=?, SALARY=? WHERE ID=?";
 
-    private Map<String, Integer> aliasColumnIndexMap = new HashMap<>();
+    public static final Attribute<Long> ID = Attribute.of("id", "PARENT.ID");
+    public static final Attribute<String> FIRST_NAME = Attribute.of("firstName", "PARENT.FIRST_NAME");
+    public static final Attribute<String> LAST_NAME = Attribute.of("lastName", "PARENT.LAST_NAME");
+    public static final Attribute<ZonedDateTime> DOB = Attribute.of("dob", "PARENT.DOB", PeopleRepository::convertDobToTimestamp);
+    public static final Attribute<BigDecimal> SALARY = Attribute.of("salary", "PARENT.SALARY");
+    public static final Attribute<Region> HOME_REGION = Attribute.of("homeRegion", "HOME_A.REGION", Region::toString,
+            "LEFT OUTER JOIN ADDRESSES AS HOME_A ON PARENT.HOME_ADDRESS = HOME_A.ID");
+
+    private static final int ASSOCIATION_IDS_PER_QUERY = 1_000;
+    private static final String FIND_ALL_BY_ID_WITHOUT_ASSOCIATIONS_SQL = SqlRegistry.toMultiGet(FIND_BY_ID_WITHOUT_ASSOCIATIONS_SQL);
+
+    private final RowPlanCache<RowPlan> rowPlans = new RowPlanCache<>(RowPlan::resolve);
+    private final RowPlanCache<SummaryColumns> summaryPlans = new RowPlanCache<>(shape -> SummaryColumns.resolve(shape, "PARENT_"));
+    private FetchPlan fetchPlan = FetchPlan.EAGER;
+    private final Map<List<PersonGrouping>, String> statisticsSqlByGroupings = new ConcurrentHashMap<>();
 
     public PeopleRepository(Connection connection) {
         super(connection);
 
-        addressRepository = new AddressRepository(connection);
+        addressRepository = new AddressRepository(getConnectionProvider());
+        addressRepository.addWriteListener(this::addressWritten);
+    }
+
+    public PeopleRepository(ConnectionProvider connectionProvider) {
+        super(connectionProvider);
+
+        addressRepository = new AddressRepository(connectionProvider);
+        addressRepository.addWriteListener(this::addressWritten);
     }
 
     @Override
@@ -75,8 +203,8 @@ public class PeopleRepository extends GrudRepository<Person> {
         ps.setBigDecimal(4, person.getSalary());
         ps.setString(5, person.getEmail());
 
-        associateAddressWithPerson(ps, person.getHomeAddress(), 6);
-        associateAddressWithPerson(ps, person.getBusinessAddress(), 7);
+        person.setHomeAddress(associateAddressWithPerson(ps, person.getHomeAddress(), 6));
+        person.setBusinessAddress(associateAddressWithPerson(ps, person.getBusinessAddress(), 7));
 
         associateChildWithPerson(person, ps);
     }
@@ -93,20 +221,132 @@ public class PeopleRepository extends GrudRepository<Person> {
 
     @Override
     protected void postSave(Person entity, long id) {
-        entity
-                .getChildren()
-                .stream()
-                .forEach(this::save);
+        if (!entity.getChildren().isEmpty()) {
+            saveGraph(entity.getChildren());
+        }
+    }
+
+    @Override
+    protected void preSaveAll(List<Person> batch) {
+        resolveAddresses(batch);
+    }
+
+    @Override
+    protected void postSaveAll(List<Person> batch) {
+        List<Person> children = new ArrayList<>();
+
+        for (Person person : batch) {
+            children.addAll(person.getChildren());
+        }
+
+        if (!children.isEmpty()) {
+            saveGraph(children);
+        }
     }
 
-    private void associateAddressWithPerson(PreparedStatement ps, Optional<Address> address, int parameterIndex) throws SQLException {
-        Address savedAddress;
+    public Person saveGraph(Person root) {
+        saveGraph(List.of(root));
+
+        return root;
+    }
+
+    /**
+     * Saves the family trees under the given people in a handful of JDBC batches instead of a save per person:
+     * first the addresses of everyone in the trees, then the people level by level, so a child is inserted
+     * once its parent has an ID. People that already have an ID aren't inserted again, their children are.
+     * @return the given people, with the IDs of the whole graph set
+     * @throws IllegalArgumentException if someone shows up twice in the graph, e.g. as their own ancestor
+     */
+    public List<Person> saveGraph(Collection<Person> roots) {
+        List<List<Person>> levels = collectLevels(roots);
+        List<Person> everyone = new ArrayList<>();
+
+        levels.forEach(everyone::addAll);
+        resolveAddresses(everyone);
+
+        for (List<Person> level : levels) {
+            List<Person> unsaved = level.stream().filter(person -> person.getId() == null).toList();
+
+            if (!unsaved.isEmpty()) {
+                insertAll(unsaved, getBatchSize());
+            }
+        }
+
+        return new ArrayList<>(roots);
+    }
+
+    private static List<List<Person>> collectLevels(Collection<Person> roots) {
+        List<List<Person>> levels = new ArrayList<>();
+        Set<Person> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Person> level = new ArrayList<>(roots);
+
+        while (!level.isEmpty()) {
+            List<Person> nextLevel = new ArrayList<>();
+
+            for (Person person : level) {
+                if (!visited.add(person)) {
+                    throw new IllegalArgumentException("Family tree has a cycle, this person shows up in it twice: " + person);
+                }
+
+                nextLevel.addAll(person.getChildren());
+            }
+
+            levels.add(level);
+            level = nextLevel;
+        }
+
+        return levels;
+    }
+
+    /**
+     * Saves the addresses of the people that aren't saved yet, all at once, and points the people at the saved ones.
+     */
+    private void resolveAddresses(List<Person> people) {
+        Set<Address> unsavedAddresses = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        for (Person person : people) {
+            person.getHomeAddress().filter(address -> address.id() == null).ifPresent(unsavedAddresses::add);
+            person.getBusinessAddress().filter(address -> address.id() == null).ifPresent(unsavedAddresses::add);
+        }
+
+        if (unsavedAddresses.isEmpty()) {
+            return;
+        }
+
+        Map<Address, Address> savedAddresses = addressRepository.findOrSaveAll(unsavedAddresses, getBatchSize());
+
+        for (Person person : people) {
+            person.getHomeAddress().map(address -> savedAddresses.getOrDefault(address, address)).ifPresent(person::setHomeAddress);
+            person.getBusinessAddress().map(address -> savedAddresses.getOrDefault(address, address)).ifPresent(person::setBusinessAddress);
+        }
+    }
+
+    /**
+     * @return the saved address the person refers to, which may be an equal one saved before
+     */
+    private Address associateAddressWithPerson(PreparedStatement ps, Optional<Address> address, int parameterIndex) throws SQLException {
+        Address savedAddress = null;
         if (address.isPresent()) {
-            savedAddress = addressRepository.save(address.get());
+            // an address that already has an ID is in the DB, no need to insert it again
+            savedAddress = addressRepository.findOrSave(address.get());
             ps.setLong(parameterIndex, savedAddress.id());
         } else {
             ps.setObject(parameterIndex, null);
         }
+
+        return savedAddress;
+    }
+
+    /**
+     * Saved people refer to an existing address with the same content instead of inserting another one,
+     * see {@link AddressRepository#setDeduplicateByContent(boolean)}.
+     */
+    public void setDeduplicateAddresses(boolean deduplicateAddresses) {
+        addressRepository.setDeduplicateByContent(deduplicateAddresses);
+    }
+
+    public boolean isDeduplicateAddresses() {
+        return addressRepository.isDeduplicateByContent();
     }
 
     @Override
@@ -119,107 +359,545 @@ public class PeopleRepository extends GrudRepository<Person> {
         ps.setLong(5, person.getId());
     }
 
+    /**
+     * The columns of UPDATE_SQL, for dirty tracking.
+     */
+    @Override
+    protected Map<String, Object> getUpdatableColumns(Person person) {
+        Map<String, Object> columns = new LinkedHashMap<>();
+
+        columns.put("FIRST_NAME", person.getFirstName());
+        columns.put("LAST_NAME", person.getLastName());
+        columns.put("DOB", person.getDob() != null ? convertDobToTimestamp(person.getDob()) : null);
+        columns.put("SALARY", person.getSalary());
+
+        return columns;
+    }
+
+    @Override
+    protected String getTableName() {
+        return "PEOPLE";
+    }
+
+    @Override
+    protected List<Attribute<?>> getQueryAttributes() {
+        return List.of(ID, FIRST_NAME, LAST_NAME, DOB, SALARY, HOME_REGION);
+    }
+
     @Override
     @SQL(value = FIND_BY_ID_SQL, operationType = CrudOperation.FIND_BY_ID)
     @SQL(value = FIND_ALL_SQL, operationType = CrudOperation.FIND_ALL)
+    @SQL(value = STREAM_ALL_SQL, operationType = CrudOperation.STREAM_ALL)
+    @SQL(value = FIND_PAGE_SQL, operationType = CrudOperation.FIND_PAGE)
+    @SQL(value = FIND_BY_CRITERIA_SQL, operationType = CrudOperation.FIND_BY_CRITERIA)
     @SQL(value = SELECT_COUNT_SQL, operationType = CrudOperation.COUNT)
     @SQL(value = DELETE_SQL, operationType = CrudOperation.DELETE_ONE)
     @SQL(value = DELETE_IN_SQL, operationType = CrudOperation.DELETE_MANY)
+    @SQL(value = SOFT_DELETE_SQL, operationType = CrudOperation.SOFT_DELETE_ONE)
+    @SQL(value = SOFT_DELETE_IN_SQL, operationType = CrudOperation.SOFT_DELETE_MANY)
+    @SQL(value = FIND_DELETED_IDS_SQL, operationType = CrudOperation.FIND_DELETED_IDS)
     Person extractEntityFromResultSet(ResultSet rs) throws SQLException {
-        Person finalParent = null;
+        RowPlan plan = rowPlans.planFor(rs);
+        Person parent = plan.parent().extract(rs).get();
 
-        do {
-            Person currentParent = extractPerson(rs, "PARENT_").get();
+        extractAssociations(parent, rs, plan);
 
-            if (finalParent == null) {
-                finalParent = currentParent;
-            }
+        return parent;
+    }
+
+    @Override
+    protected boolean mergeRowIntoEntity(Person parent, ResultSet rs) throws SQLException {
+        // rows of one parent come one after another, each one with another child
+        RowPlan plan = rowPlans.planFor(rs);
+
+        if (!parent.getId().equals(ResultSetShape.getLong(rs, plan.parent().id()))) {
+            return false;
+        }
+
+        extractAssociations(parent, rs, plan);
+
+        return true;
+    }
+
+    /**
+     * Like {@link #find(Criteria)}, but reads only the columns of a {@link PersonSummary}, e.g. for a list screen.
+     */
+    public List<PersonSummary> findSummaries(Criteria criteria) {
+        return query(FIND_SUMMARIES_SQL, criteria, this::extractSummary);
+    }
+
+    /**
+     * Keyset pagination of {@link PersonSummary}, see {@link #findPage(Long, int)}.
+     */
+    public Page<PersonSummary> findSummaryPage(Long afterId, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page limit must be positive: " + limit);
+        }
 
-            if (!finalParent.equals(currentParent)) {
-                rs.previous();
-                break;
+        List<PersonSummary> summaries = new ArrayList<>(limit + 1);
+
+        try (ConnectionLease lease = getConnectionProvider().acquire()) {
+            PreparedStatement ps = lease.statementCache().prepare(FIND_SUMMARY_PAGE_SQL);
+
+            ps.setLong(1, afterId != null ? afterId : Long.MIN_VALUE);
+            ps.setInt(2, limit + 1);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    summaries.add(extractSummary(rs));
+                }
             }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
 
-            Optional<Person> child = extractPerson(rs, "CHILD_");
+        if (summaries.size() <= limit) {
+            return new Page<>(List.copyOf(summaries), null);
+        }
 
-            Address homeAddress = extractAddress(rs, "HOME_A_");
-            Address businessAddress = extractAddress(rs, "BUSINESS_A_");
+        List<PersonSummary> content = List.copyOf(summaries.subList(0, limit));
 
-            finalParent.setHomeAddress(homeAddress);
-            finalParent.setBusinessAddress(businessAddress);
+        return new Page<>(content, content.get(limit - 1).id());
+    }
 
-            child.ifPresent(finalParent::addChild);
-        } while (rs.next());
+    private PersonSummary extractSummary(ResultSet rs) throws SQLException {
+        return summaryPlans.planFor(rs).extract(rs);
+    }
 
-        return finalParent;
+    /**
+     * Salary count, sum, average, min and max per group of the people matching the criteria, computed by H2:
+     * GROUP BY over PEOPLE joined with the home ADDRESSES. The groups come sorted, the criteria may limit them.
+     * @param groupings at least one, e.g. REGION, BIRTH_DECADE for a row per region and decade
+     */
+    public List<SalaryStatistics> salaryStatistics(Criteria criteria, PersonGrouping... groupings) {
+        return query(statisticsSql(groupings), groupByColumns(groupings), criteria, statisticsMapper(groupings.length));
     }
 
-    private Optional<Person> extractPerson(ResultSet rs, String aliasPrefix) throws SQLException {
-        Long personId = getValueByAlias(aliasPrefix + "ID", rs, Long.class);
+    /**
+     * Like {@link #salaryStatistics(Criteria, PersonGrouping...)}, for groupings with too many groups to hold at once,
+     * e.g. by state and birth year. The stream holds an open cursor, close it when done.
+     */
+    public Stream<SalaryStatistics> streamSalaryStatistics(Criteria criteria, PersonGrouping... groupings) {
+        return streamQuery(statisticsSql(groupings), groupByColumns(groupings), criteria, statisticsMapper(groupings.length));
+    }
 
-        if (personId == null) {
-            return Optional.empty();
+    private String statisticsSql(PersonGrouping... groupings) {
+        if (groupings.length == 0) {
+            throw new IllegalArgumentException("At least one grouping is needed");
         }
 
-        String firstName = getValueByAlias(aliasPrefix + "FIRST_NAME", rs, String.class);
-        String lastName = getValueByAlias(aliasPrefix + "LAST_NAME", rs, String.class);
-        ZonedDateTime dob = ZonedDateTime.of(getValueByAlias(aliasPrefix + "DOB", rs, Timestamp.class).toLocalDateTime(), ZoneId.of("+0"));
-        BigDecimal salary = getValueByAlias(aliasPrefix + "SALARY", rs, BigDecimal.class);
+        return statisticsSqlByGroupings.computeIfAbsent(List.of(groupings), k -> {
+            StringBuilder sql = new StringBuilder("SELECT ");
+
+            for (PersonGrouping grouping : groupings) {
+                // read with getString(), numbers too, so the groups sort as what they are
+                sql.append(grouping.getColumn()).append(", ");
+            }
+
+            return sql.append("""
+                    COUNT(*), SUM(PARENT.SALARY), AVG(PARENT.SALARY), MIN(PARENT.SALARY), MAX(PARENT.SALARY)
+                    FROM PEOPLE AS PARENT
+                    LEFT OUTER JOIN ADDRESSES AS HOME_A ON PARENT.HOME_ADDRESS = HOME_A.ID
+                    WHERE PARENT.DELETE_FLAG = FALSE
+                    """).toString();
+        });
+    }
+
+    private static List<String> groupByColumns(PersonGrouping... groupings) {
+        return Arrays.stream(groupings).map(PersonGrouping::getColumn).toList();
+    }
+
+    /**
+     * The statistics SQL is generated, so the columns are where it put them: the groups, then the aggregates.
+     */
+    private static RowMapper<SalaryStatistics> statisticsMapper(int groupCount) {
+        return rs -> {
+            List<String> group = new ArrayList<>(groupCount);
 
-        Person person = new Person(personId, firstName, lastName, dob, salary);
+            for (int i = 1; i <= groupCount; i++) {
+                group.add(rs.getString(i));
+            }
 
-        return Optional.of(person);
+            return new SalaryStatistics(
+                    Collections.unmodifiableList(group),
+                    rs.getLong(groupCount + 1),
+                    rs.getBigDecimal(groupCount + 2),
+                    rs.getBigDecimal(groupCount + 3),
+                    rs.getBigDecimal(groupCount + 4),
+                    rs.getBigDecimal(groupCount + 5)
+            );
+        };
     }
 
-    private Address extractAddress(ResultSet rs, String aliasPrefix) throws SQLException {
-        Long addressId = getValueByAlias(aliasPrefix + "ID", rs, Long.class);
+    public Optional<Person> findTreeById(Long id, int maxDepth) {
+        return findTreeById(id, maxDepth, false);
+    }
 
-        if (addressId == null) {
-            return null;
+    /**
+     * Finds the person with the descendants up to maxDepth levels down (1 for the children only) in one query,
+     * a recursive CTE over PARENT_ID. The rows come level by level, so every parent is known before its children
+     * and the tree is put together in one pass over a map by ID.
+     * The people of the tree aren't lazy: the ones at maxDepth have no children, and no addresses unless withAddresses.
+     */
+    public Optional<Person> findTreeById(Long id, int maxDepth, boolean withAddresses) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("Max depth must not be negative: " + maxDepth);
         }
 
-        String streetAddress = getValueByAlias(aliasPrefix + "STREET_ADDRESS", rs, String.class);
-        String address2 = getValueByAlias(aliasPrefix + "ADDRESS2", rs, String.class);
-        String city = getValueByAlias(aliasPrefix + "CITY", rs, String.class);
-        String state = getValueByAlias(aliasPrefix + "STATE", rs, String.class);
-        String postcode = getValueByAlias(aliasPrefix + "POSTCODE", rs, String.class);
-        String county = getValueByAlias(aliasPrefix + "COUNTY", rs, String.class);
-        Region region = Region.valueOf(getValueByAlias(aliasPrefix + "REGION", rs, String.class).toUpperCase());
-        String country = getValueByAlias(aliasPrefix + "COUNTRY", rs, String.class);
+        Map<Long, Person> peopleById = new HashMap<>();
+        Person root = null;
+
+        try (ConnectionLease lease = getConnectionProvider().acquire()) {
+            PreparedStatement ps = lease.statementCache().prepare(withAddresses ? FIND_TREE_WITH_ADDRESSES_SQL : FIND_TREE_SQL);
+
+            ps.setLong(1, id);
+            ps.setInt(2, maxDepth);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    RowPlan plan = rowPlans.planFor(rs);
+                    Person person = plan.parent().extract(rs).get();
+
+                    person.setHomeAddress(plan.homeAddress().extract(rs));
+                    person.setBusinessAddress(plan.businessAddress().extract(rs));
+                    takeSnapshot(person);
 
-        Address address = new Address(addressId, streetAddress, address2, city, state, postcode, country, county, region);
+                    if (root == null) {
+                        root = person;
+                    } else {
+                        peopleById.get(ResultSetShape.getLong(rs, plan.treeParentId())).addChild(person);
+                    }
+
+                    peopleById.put(person.getId(), person);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        IdentityMap identityMap = UnitOfWork.currentIdentityMap(getConnectionProvider());
+
+        if (root != null && identityMap != null) {
+            root = attach(root, identityMap);
+        }
 
-        return address;
+        return Optional.ofNullable(root);
     }
 
-    private <T> T getValueByAlias(String alias, ResultSet rs, Class<T> clazz) throws SQLException {
-        int columnCount = rs.getMetaData().getColumnCount();
+    public FetchPlan getFetchPlan() {
+        return fetchPlan;
+    }
+
+    /**
+     * EAGER (the default) joins the children and addresses into findById(), the other finders don't read them.
+     * LAZY and BATCH_LAZY leave them out of every finder, they're loaded on first access of
+     * getChildren()/getHomeAddress()/getBusinessAddress(): for one person or for everyone found with them.
+     */
+    public void setFetchPlan(FetchPlan fetchPlan) {
+        this.fetchPlan = fetchPlan;
+    }
+
+    @Override
+    protected String sql(CrudOperation operationType) {
+        if (operationType == CrudOperation.FIND_BY_ID && fetchPlan != FetchPlan.EAGER) {
+            return FIND_BY_ID_WITHOUT_ASSOCIATIONS_SQL;
+        }
+
+        if (operationType == CrudOperation.FIND_ALL_BY_ID && fetchPlan != FetchPlan.EAGER) {
+            return FIND_ALL_BY_ID_WITHOUT_ASSOCIATIONS_SQL;
+        }
 
-        int foundIdx = getIndexforAlias(alias, rs, columnCount);
-        return foundIdx != 0 ? (T) rs.getObject(foundIdx) : null;
-//        throw new SQLException(String.format("Column not found for alias: '%s'%n", alias));
+        return super.sql(operationType);
     }
 
-    private int getIndexforAlias(String alias, ResultSet rs, int columnCount) throws SQLException {
-        Integer foundIndex = aliasColumnIndexMap.getOrDefault(alias, 0);
+    @Override
+    protected void afterLoad(List<Person> people) {
+        switch (fetchPlan) {
+            case EAGER -> { }
+            case LAZY -> people.forEach(person -> person.setAssociationLoader(() -> loadAssociations(List.of(person))));
+            case BATCH_LAZY -> {
+                List<Person> batch = List.copyOf(people);
+
+                people.forEach(person -> person.setAssociationLoader(() -> loadAssociations(batch)));
+            }
+        }
+    }
+
+    /**
+     * Reads the children and addresses of the people with FIND_ASSOCIATIONS_SQL, the join of findById() for many IDs.
+     * The children get lazy associations of their own.
+     */
+    private void loadAssociations(List<Person> people) {
+        Map<Long, Person> loadedById = new HashMap<>();
+
+        // the whole batch is loaded now, the others mustn't run the query again
+        people.forEach(person -> person.setAssociationLoader(null));
 
-        if (foundIndex == 0) {
-            // Params:
-            //columnIndex – the first column is 1, the second is 2, ...
-            for (int colIdx = 1; colIdx <= columnCount; colIdx++) {
-                if (alias.equals(rs.getMetaData().getColumnLabel(colIdx))) {
-                    foundIndex = colIdx;
-                    aliasColumnIndexMap.put(alias, foundIndex);
+        try (ConnectionLease lease = getConnectionProvider().acquire()) {
+            PreparedStatement ps = lease.statementCache().prepare(FIND_ASSOCIATIONS_SQL);
 
-                    break;
+            for (int from = 0; from < people.size(); from += ASSOCIATION_IDS_PER_QUERY) {
+                Object[] ids = people.subList(from, Math.min(from + ASSOCIATION_IDS_PER_QUERY, people.size())).stream()
+                        .map(Person::getId)
+                        .toArray();
+
+                ps.setArray(1, lease.connection().createArrayOf("BIGINT", ids));
+
+                try (ResultSet rs = ps.executeQuery()) {
+                    new EntityCursor<>(this, rs).forEachRemaining(loaded -> loadedById.put(loaded.getId(), loaded));
                 }
             }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
         }
 
-        return foundIndex;
+        IdentityMap identityMap = UnitOfWork.currentIdentityMap(getConnectionProvider());
+        List<Person> children = new ArrayList<>();
+
+        for (Person person : people) {
+            Person loaded = loadedById.get(person.getId());
+
+            if (loaded == null) {
+                continue;
+            }
+
+            List<Person> loadedChildren = new ArrayList<>();
+
+            for (Person child : loaded.getChildren()) {
+                Person attached = identityMap != null ? attach(child, identityMap) : child;
+
+                loadedChildren.add(attached);
+
+                // a child the unit of work already knows has been prepared when it was loaded
+                if (attached == child) {
+                    children.add(child);
+                }
+            }
+
+            person.setLoadedAssociations(
+                    loaded.getHomeAddress().map(address -> intern(address, identityMap)).orElse(null),
+                    loaded.getBusinessAddress().map(address -> intern(address, identityMap)).orElse(null),
+                    loadedChildren
+            );
+        }
+
+        afterLoad(children);
+    }
+
+    /**
+     * A cached person holds its children, so a write to a child invalidates the parent too,
+     * whether the parent is known from the child or only from the cache.
+     */
+    @Override
+    protected void entityWritten(Person person) {
+        super.entityWritten(person);
+
+        EntityCache<Person> cache = getEntityCache();
+
+        if (cache != null) {
+            Optional<Long> parentId = person.getParent().map(Person::getId);
+            Long id = person.getId();
+
+            invalidateCached(() -> {
+                parentId.ifPresent(cache::invalidate);
+                invalidateCachedParentsOf(id);
+            });
+        }
+    }
+
+    @Override
+    protected void entityDeleted(Long id) {
+        super.entityDeleted(id);
+
+        if (getEntityCache() != null) {
+            invalidateCached(() -> invalidateCachedParentsOf(id));
+        }
+    }
+
+    private void invalidateCachedParentsOf(Long id) {
+        getEntityCache().invalidateDependents(new CacheDependency(Person.class, id));
+    }
+
+    /**
+     * Besides the children and addresses, the cache indexes the people by them, a write to one of them
+     * invalidates the people holding it without a look at every cached person.
+     */
+    @Override
+    public void setEntityCache(EntityCache<Person> entityCache) {
+        if (entityCache != null) {
+            entityCache.setDependencyKeys(PeopleRepository::cacheDependencies);
+        }
+
+        super.setEntityCache(entityCache);
+    }
+
+    // the cached people are never lazy, what isn't loaded with them is read from the database by every copy
+    private static List<CacheDependency> cacheDependencies(Person person) {
+        List<CacheDependency> dependencies = new ArrayList<>();
+
+        person.getChildren().forEach(child -> dependencies.add(new CacheDependency(Person.class, child.getId())));
+        person.getHomeAddress().ifPresent(address -> dependencies.add(new CacheDependency(Address.class, address.id())));
+        person.getBusinessAddress().ifPresent(address -> dependencies.add(new CacheDependency(Address.class, address.id())));
+
+        return dependencies;
+    }
+
+    /**
+     * The children of deleted people stay, without a parent. A soft delete leaves them pointing at it
+     * until the parent is purged, so it could still be restored with its family.
+     */
+    @Override
+    protected void beforeDelete(ConnectionLease lease, List<Long> ids) throws SQLException {
+        PreparedStatement ps = lease.statementCache().prepare(DETACH_CHILDREN_SQL);
+
+        ps.setArray(1, lease.connection().createArrayOf("BIGINT", ids.toArray()));
+        ps.executeUpdate();
+    }
+
+    private void addressWritten(Long addressId) {
+        EntityCache<Person> cache = getEntityCache();
+
+        if (cache != null && addressId != null) {
+            invalidateCached(() -> cache.invalidateDependents(new CacheDependency(Address.class, addressId)));
+        }
+    }
+
+    private static <E> E intern(E entity, IdentityMap identityMap) {
+        return identityMap != null ? identityMap.intern(entity) : entity;
+    }
+
+    /**
+     * The cached people are never handed out, so they have no association loader: the copy gets the addresses
+     * and children that were read with them, copied too, and a loader from afterLoad() if they weren't read.
+     */
+    @Override
+    protected Person copyOf(Person person) {
+        Person copy = new Person(person.getId(), person.getFirstName(), person.getLastName(), person.getDob());
+
+        copy.setSalary(person.getSalary());
+        copy.setEmail(person.getEmail());
+        copy.setHomeAddress(person.getHomeAddress().orElse(null));
+        copy.setBusinessAddress(person.getBusinessAddress().orElse(null));
+        person.getChildren().forEach(child -> copy.addChild(copyOf(child)));
+        takeSnapshot(copy);
+
+        return copy;
+    }
+
+    /**
+     * Besides the person, its addresses and children (with their own, all the way down a tree) go to
+     * the identity map, so people sharing an address or a child hydrated in the same unit of work get the same instance.
+     */
+    @Override
+    protected Person attach(Person person, IdentityMap identityMap) {
+        Person known = identityMap.intern(person);
+
+        if (known != person) {
+            return known;
+        }
+
+        person.getHomeAddress().map(identityMap::intern).ifPresent(person::setHomeAddress);
+        person.getBusinessAddress().map(identityMap::intern).ifPresent(person::setBusinessAddress);
+
+        List<Person> children = new ArrayList<>(person.getChildren());
+        person.getChildren().clear();
+        children.stream().map(child -> attach(child, identityMap)).forEach(person::addChild);
+
+        return person;
+    }
+
+    private void extractAssociations(Person parent, ResultSet rs, RowPlan plan) throws SQLException {
+        Optional<Person> child = plan.child().extract(rs);
+        child.ifPresent(this::takeSnapshot);
+
+        Address homeAddress = plan.homeAddress().extract(rs);
+        Address businessAddress = plan.businessAddress().extract(rs);
+
+        parent.setHomeAddress(homeAddress);
+        parent.setBusinessAddress(businessAddress);
+
+        child.ifPresent(parent::addChild);
+    }
+
+    @Override
+    public void close() {
+        addressRepository.close();
+        super.close();
     }
 
     private static Timestamp convertDobToTimestamp(ZonedDateTime dob) {
         return Timestamp.valueOf(dob.withZoneSameInstant(ZoneId.of("+0")).toLocalDateTime());
     }
+
+    private record PersonColumns(int id, int firstName, int lastName, int dob, int salary) {
+        static PersonColumns resolve(ResultSetShape shape, String prefix) {
+            return new PersonColumns(
+                    shape.indexOf(prefix + "ID"),
+                    shape.indexOf(prefix + "FIRST_NAME"),
+                    shape.indexOf(prefix + "LAST_NAME"),
+                    shape.indexOf(prefix + "DOB"),
+                    shape.indexOf(prefix + "SALARY")
+            );
+        }
+
+        Optional<Person> extract(ResultSet rs) throws SQLException {
+            Long personId = ResultSetShape.getLong(rs, id);
+
+            if (personId == null) {
+                return Optional.empty();
+            }
+
+            String firstName = ResultSetShape.getString(rs, this.firstName);
+            String lastName = ResultSetShape.getString(rs, this.lastName);
+            ZonedDateTime dob = ZonedDateTime.of(ResultSetShape.getTimestamp(rs, this.dob).toLocalDateTime(), ZoneId.of("+0"));
+            BigDecimal salary = ResultSetShape.getBigDecimal(rs, this.salary);
+
+            return Optional.of(new Person(personId, firstName, lastName, dob, salary));
+        }
+    }
+
+    /**
+     * Where the columns of a {@link PersonSummary} are in a row, no labels are looked up per row.
+     */
+    private record SummaryColumns(int id, int firstName, int lastName, int salary) {
+        static SummaryColumns resolve(ResultSetShape shape, String prefix) {
+            return new SummaryColumns(
+                    shape.indexOf(prefix + "ID"),
+                    shape.indexOf(prefix + "FIRST_NAME"),
+                    shape.indexOf(prefix + "LAST_NAME"),
+                    shape.indexOf(prefix + "SALARY")
+            );
+        }
+
+        PersonSummary extract(ResultSet rs) throws SQLException {
+            return new PersonSummary(
+                    rs.getLong(id),
+                    ResultSetShape.getString(rs, firstName),
+                    ResultSetShape.getString(rs, lastName),
+                    ResultSetShape.getBigDecimal(rs, salary)
+            );
+        }
+    }
+
+    /**
+     * Where the parent, its child and its addresses are in a row, compiled once per query shape.
+     * Columns a query doesn't select (e.g. CHILD_ in FIND_ALL_SQL) are resolved to 0 and read as absent.
+     * TREE_PARENT_ID is the parent of a person in FIND_TREE_SQL.
+     */
+    private record RowPlan(PersonColumns parent, PersonColumns child, AddressRepository.AddressColumns homeAddress, AddressRepository.AddressColumns businessAddress, int treeParentId) {
+        static RowPlan resolve(ResultSetShape shape) {
+            return new RowPlan(
+                    PersonColumns.resolve(shape, "PARENT_"),
+                    PersonColumns.resolve(shape, "CHILD_"),
+                    AddressRepository.AddressColumns.resolve(shape, "HOME_A_"),
+                    AddressRepository.AddressColumns.resolve(shape, "BUSINESS_A_"),
+                    shape.indexOf("TREE_PARENT_ID")
+            );
+        }
+    }
+
+    /**
+     * A child or an address a cached person holds, by entity class and ID.
+     */
+    private record CacheDependency(Class<?> entityClass, Long id) { }
 }
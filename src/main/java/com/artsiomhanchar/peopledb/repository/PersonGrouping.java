@@ -0,0 +1,23 @@
+package com.artsiomhanchar.peopledb.repository;
+
+/**
+ * What {@link PeopleRepository#salaryStatistics(Criteria, PersonGrouping...)} groups people by.
+ * The address ones are of the home address. DOB is stored in UTC, so are the years.
+ */
+public enum PersonGrouping {
+    REGION("HOME_A.REGION"),
+    STATE("HOME_A.STATE"),
+    COUNTRY("HOME_A.COUNTRY"),
+    BIRTH_YEAR("EXTRACT(YEAR FROM PARENT.DOB)"),
+    BIRTH_DECADE("EXTRACT(YEAR FROM PARENT.DOB) / 10 * 10");
+
+    private final String column;
+
+    PersonGrouping(String column) {
+        this.column = column;
+    }
+
+    String getColumn() {
+        return column;
+    }
+}
@@ -0,0 +1,21 @@
+package com.artsiomhanchar.peopledb.repository;
+
+/**
+ * What EXPLAIN says about a criteria query.
+ * @param sql the query, with "?" for the values
+ * @param plan the plan as H2 prints it, the access path of every table is in a comment, e.g. "/* PUBLIC.PEOPLE.tableScan *&#47;"
+ */
+public record QueryPlan(String sql, String plan) {
+
+    /**
+     * @return false if any of the tables is read with a full scan. Note that any index counts,
+     * also one that hardly narrows the rows down, use {@link #usesIndex(String)} to check for the one expected.
+     */
+    public boolean usesIndex() {
+        return !plan.contains(".tableScan");
+    }
+
+    public boolean usesIndex(String indexName) {
+        return plan.toUpperCase().contains("." + indexName.toUpperCase() + ":");
+    }
+}
@@ -0,0 +1,67 @@
+package com.artsiomhanchar.peopledb.repository;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Column labels of a result set and their indices. Every query returning the same labels in the same order
+ * shares one immutable instance, so it's resolved from the metadata once and can be used from any thread.
+ * A label the query doesn't select has index 0, which the typed getters read as null.
+ */
+final class ResultSetShape {
+    private static final Map<String, ResultSetShape> SHAPES = new ConcurrentHashMap<>();
+
+    private final Map<String, Integer> indices;
+
+    private ResultSetShape(Map<String, Integer> indices) {
+        this.indices = indices;
+    }
+
+    static ResultSetShape of(ResultSet rs) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        StringBuilder key = new StringBuilder();
+        Map<String, Integer> indices = new HashMap<>();
+
+        for (int colIdx = 1; colIdx <= columnCount; colIdx++) {
+            String label = metaData.getColumnLabel(colIdx);
+
+            key.append(label).append(',');
+            indices.putIfAbsent(label, colIdx);
+        }
+
+        return SHAPES.computeIfAbsent(key.toString(), k -> new ResultSetShape(Map.copyOf(indices)));
+    }
+
+    int indexOf(String label) {
+        return indices.getOrDefault(label, 0);
+    }
+
+    static Long getLong(ResultSet rs, int index) throws SQLException {
+        if (index == 0) {
+            return null;
+        }
+
+        long value = rs.getLong(index);
+
+        return rs.wasNull() ? null : value;
+    }
+
+    static String getString(ResultSet rs, int index) throws SQLException {
+        return index == 0 ? null : rs.getString(index);
+    }
+
+    static Timestamp getTimestamp(ResultSet rs, int index) throws SQLException {
+        return index == 0 ? null : rs.getTimestamp(index);
+    }
+
+    static BigDecimal getBigDecimal(ResultSet rs, int index) throws SQLException {
+        return index == 0 ? null : rs.getBigDecimal(index);
+    }
+}
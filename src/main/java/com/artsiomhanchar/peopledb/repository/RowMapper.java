@@ -0,0 +1,12 @@
+package com.artsiomhanchar.peopledb.repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row to a projection, see {@link GrudRepository#query(String, Criteria, RowMapper)}.
+ */
+@FunctionalInterface
+public interface RowMapper<R> {
+    R map(ResultSet rs) throws SQLException;
+}
@@ -0,0 +1,36 @@
+package com.artsiomhanchar.peopledb.repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Plans of column indices a repository compiles once per {@link ResultSetShape}.
+ * The plan of the last result set is remembered, so rows after the first one don't touch the metadata at all.
+ */
+final class RowPlanCache<P> {
+    private final Function<ResultSetShape, P> compiler;
+    private final Map<ResultSetShape, P> plans = new ConcurrentHashMap<>();
+    private volatile Bound<P> lastBound;
+
+    RowPlanCache(Function<ResultSetShape, P> compiler) {
+        this.compiler = compiler;
+    }
+
+    P planFor(ResultSet rs) throws SQLException {
+        Bound<P> bound = lastBound;
+
+        if (bound != null && bound.rs() == rs) {
+            return bound.plan();
+        }
+
+        P plan = plans.computeIfAbsent(ResultSetShape.of(rs), compiler);
+        lastBound = new Bound<>(rs, plan);
+
+        return plan;
+    }
+
+    private record Bound<P>(ResultSet rs, P plan) { }
+}
@@ -0,0 +1,67 @@
+package com.artsiomhanchar.peopledb.repository;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Column values of loaded entities as they were read, for dirty tracking.
+ * Entities are keyed by identity (their equals() and hashCode() change with the fields) and held weakly,
+ * so a snapshot goes away with its entity.
+ */
+final class SnapshotStore {
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+    private final Map<Key, Object[]> snapshots = new ConcurrentHashMap<>();
+
+    void put(Object entity, Object[] values) {
+        expungeCollected();
+        snapshots.put(new Key(entity, queue), values);
+    }
+
+    /**
+     * @return null if the entity wasn't loaded by the repository
+     */
+    Object[] get(Object entity) {
+        expungeCollected();
+
+        return snapshots.get(new Key(entity, null));
+    }
+
+    int size() {
+        expungeCollected();
+
+        return snapshots.size();
+    }
+
+    private void expungeCollected() {
+        Reference<?> collected;
+
+        while ((collected = queue.poll()) != null) {
+            snapshots.remove(collected);
+        }
+    }
+
+    private static final class Key extends WeakReference<Object> {
+        private final int hash;
+
+        Key(Object entity, ReferenceQueue<Object> queue) {
+            super(entity, queue);
+            this.hash = System.identityHashCode(entity);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key key)) return false;
+            Object entity = get();
+            return entity != null && entity == key.get();
+        }
+    }
+}
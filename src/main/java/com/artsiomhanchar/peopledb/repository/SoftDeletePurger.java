@@ -0,0 +1,127 @@
+package com.artsiomhanchar.peopledb.repository;
+
+import com.artsiomhanchar.peopledb.pool.ConnectionPool;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Removes the rows flagged by a soft delete in the background, a small batch at a time with a pause in between,
+ * so a purge never holds locks or the connection for long. A run only goes on while the quiet period check says so,
+ * e.g. {@link #poolIsIdle(ConnectionPool)}.
+ * The repository is used from the purger's thread, so it has to be a pooled one.
+ */
+public class SoftDeletePurger implements AutoCloseable {
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final Duration DEFAULT_PAUSE_BETWEEN_BATCHES = Duration.ofMillis(50);
+
+    private final GrudRepository<?> repository;
+    private final Duration interval;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private Duration pauseBetweenBatches = DEFAULT_PAUSE_BETWEEN_BATCHES;
+    private BooleanSupplier quietPeriod = () -> true;
+    private Consumer<RuntimeException> failureListener = e -> { };
+    private final AtomicLong purgedCount = new AtomicLong();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param interval time between the end of a run and the start of the next one
+     */
+    public SoftDeletePurger(GrudRepository<?> repository, Duration interval) {
+        this.repository = repository;
+        this.interval = interval;
+    }
+
+    /**
+     * @return quiet period check that holds while none of the pool's connections is borrowed
+     */
+    public static BooleanSupplier poolIsIdle(ConnectionPool pool) {
+        return () -> pool.getMetrics().activeConnections() == 0;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            throw new IllegalStateException("Purger is already started");
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "soft-delete-purger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::runSafely, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Purges batch after batch until there's nothing left or the quiet period is over.
+     * @return number of rows purged by this run
+     */
+    public long purgeNow() throws InterruptedException {
+        long purged = 0;
+
+        while (quietPeriod.getAsBoolean()) {
+            long batchPurged = repository.purgeDeleted(batchSize);
+            purged += batchPurged;
+            purgedCount.addAndGet(batchPurged);
+
+            if (batchPurged < batchSize) {
+                break;
+            }
+
+            Thread.sleep(pauseBetweenBatches.toMillis());
+        }
+
+        return purged;
+    }
+
+    private void runSafely() {
+        try {
+            purgeNow();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // the next run tries again, a failed one mustn't cancel the schedule
+            failureListener.accept(e);
+        }
+    }
+
+    public long getPurgedCount() {
+        return purgedCount.get();
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+
+        this.batchSize = batchSize;
+    }
+
+    public void setPauseBetweenBatches(Duration pauseBetweenBatches) {
+        this.pauseBetweenBatches = pauseBetweenBatches;
+    }
+
+    public void setQuietPeriod(BooleanSupplier quietPeriod) {
+        this.quietPeriod = quietPeriod;
+    }
+
+    /**
+     * @param failureListener called with what a scheduled run failed with, e.g. to log it; nothing is reported by default
+     */
+    public void setFailureListener(Consumer<RuntimeException> failureListener) {
+        this.failureListener = failureListener;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.artsiomhanchar.peopledb.repository;
+
+import com.artsiomhanchar.peopledb.annotation.MultiSQL;
+import com.artsiomhanchar.peopledb.annotation.SQL;
+import com.artsiomhanchar.peopledb.model.CrudOperation;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resolved SQL of one repository class, keyed by {@link CrudOperation}.
+ * It's built once per repository class, on the first use of an instance, and shared by all the instances after that,
+ * so the CRUD methods don't have to scan the {@link SQL} annotations on every call.
+ */
+final class SqlRegistry {
+    private static final Set<CrudOperation> REQUIRED_OPERATIONS = EnumSet.of(CrudOperation.SAVE, CrudOperation.FIND_BY_ID);
+    private static final Map<Class<?>, SqlRegistry> REGISTRIES = new ConcurrentHashMap<>();
+    private static final Pattern ID_PARAMETER = Pattern.compile("([A-Za-z_][\\w.]*)\\s*=\\s*\\?");
+
+    private final String repositoryName;
+    private final EnumMap<CrudOperation, String> sqlByOperation;
+
+    private SqlRegistry(String repositoryName, EnumMap<CrudOperation, String> sqlByOperation) {
+        this.repositoryName = repositoryName;
+        this.sqlByOperation = sqlByOperation;
+    }
+
+    static SqlRegistry of(GrudRepository<?> repository) {
+        return REGISTRIES.computeIfAbsent(repository.getClass(), repositoryClass -> resolve(repository));
+    }
+
+    /**
+     * @return SQL for the operation. Throws right away if the repository doesn't define one.
+     */
+    String sql(CrudOperation operationType) {
+        String sql = sqlByOperation.get(operationType);
+
+        if (sql == null) {
+            throw new IllegalStateException(String.format("SQL not defined for %s in %s", operationType, repositoryName));
+        }
+
+        return sql;
+    }
+
+    boolean isDefined(CrudOperation operationType) {
+        return sqlByOperation.containsKey(operationType);
+    }
+
+    private static SqlRegistry resolve(GrudRepository<?> repository) {
+        Class<?> repositoryClass = repository.getClass();
+        EnumMap<CrudOperation, String> sqlByOperation = new EnumMap<>(CrudOperation.class);
+
+        for (SQL annotation : findAnnotations(repositoryClass)) {
+            String previous = sqlByOperation.putIfAbsent(annotation.operationType(), annotation.value());
+
+            if (previous != null) {
+                throw new IllegalStateException(String.format(
+                        "SQL for %s is defined more than once in %s", annotation.operationType(), repositoryClass.getSimpleName()
+                ));
+            }
+        }
+
+        for (CrudOperation operationType : CrudOperation.values()) {
+            if (!sqlByOperation.containsKey(operationType)) {
+                String sql = fromGetter(repository.sqlGetter(operationType));
+
+                if (sql != null) {
+                    sqlByOperation.put(operationType, sql);
+                }
+            }
+        }
+
+        if (!sqlByOperation.containsKey(CrudOperation.FIND_ALL_BY_ID) && sqlByOperation.containsKey(CrudOperation.FIND_BY_ID)) {
+            String sql = toMultiGet(sqlByOperation.get(CrudOperation.FIND_BY_ID));
+
+            if (sql != null) {
+                sqlByOperation.put(CrudOperation.FIND_ALL_BY_ID, sql);
+            }
+        }
+
+        sqlByOperation.forEach((operationType, sql) -> {
+            if (sql.isBlank()) {
+                throw new IllegalStateException(String.format(
+                        "Blank SQL for %s in %s", operationType, repositoryClass.getSimpleName()
+                ));
+            }
+        });
+
+        for (CrudOperation operationType : REQUIRED_OPERATIONS) {
+            if (!sqlByOperation.containsKey(operationType)) {
+                throw new IllegalStateException(String.format(
+                        "SQL not defined for %s in %s", operationType, repositoryClass.getSimpleName()
+                ));
+            }
+        }
+
+        return new SqlRegistry(repositoryClass.getSimpleName(), sqlByOperation);
+    }
+
+    /**
+     * Turns a lookup by one ID ("... WHERE P.ID = ?") into a lookup by an array of IDs ("... WHERE P.ID = ANY(?) ORDER BY P.ID").
+     * The rows of an entity have to come one after another, hence the ORDER BY.
+     * @return null if the SQL has anything but one "column = ?" parameter
+     */
+    static String toMultiGet(String findByIdSql) {
+        Matcher matcher = ID_PARAMETER.matcher(findByIdSql);
+
+        if (!matcher.find() || findByIdSql.indexOf('?') != findByIdSql.lastIndexOf('?')) {
+            return null;
+        }
+
+        String idColumn = matcher.group(1);
+        String sql = findByIdSql.substring(0, matcher.start()) + idColumn + " = ANY(?)" + findByIdSql.substring(matcher.end());
+
+        if (sql.toUpperCase().contains("ORDER BY")) {
+            return sql;
+        }
+
+        return sql.stripTrailing() + "\nORDER BY " + idColumn + "\n";
+    }
+
+    private static List<SQL> findAnnotations(Class<?> repositoryClass) {
+        List<SQL> annotations = new ArrayList<>();
+
+        for (Method method : repositoryClass.getDeclaredMethods()) {
+            if (method.isBridge()) {
+                // bridge methods of the generic overrides carry copies of the same annotations
+                continue;
+            }
+
+            MultiSQL multiSQL = method.getAnnotation(MultiSQL.class);
+
+            if (multiSQL != null) {
+                annotations.addAll(Arrays.asList(multiSQL.value()));
+            }
+
+            SQL sql = method.getAnnotation(SQL.class);
+
+            if (sql != null) {
+                annotations.add(sql);
+            }
+        }
+
+        return annotations;
+    }
+
+    private static String fromGetter(Supplier<String> sqlGetter) {
+        if (sqlGetter == null) {
+            return null;
+        }
+
+        try {
+            return sqlGetter.get();
+        } catch (UnsupportedOperationException e) {
+            // getter isn't overridden, so the operation is not supported by this repository
+            return null;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.artsiomhanchar.peopledb.repository;
+
+import com.artsiomhanchar.peopledb.pool.ConnectionLease;
+import com.artsiomhanchar.peopledb.pool.ConnectionProvider;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A business operation on one connection in one transaction, bound to the thread that began it.
+ * <p>
+ * Repositories on the same {@link ConnectionProvider} put what they load and save into the {@link IdentityMap}
+ * of the unit of work: repeated {@link GrudRepository#findById(Long)} calls are answered from memory and
+ * equal entities (e.g. an address shared by several people) are the same instance. The map is cleared on
+ * commit and rollback, since what's in memory may no longer match the database.
+ * <pre>
+ * try (UnitOfWork unitOfWork = UnitOfWork.begin(pool)) {
+ *     ...
+ *     unitOfWork.commit();
+ * }
+ * </pre>
+ * Whatever isn't committed is rolled back by {@link #close()}.
+ */
+public final class UnitOfWork implements AutoCloseable {
+    private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+
+    private final ConnectionProvider connectionProvider;
+    private final ConnectionLease lease;
+    private final boolean autoCommit;
+    private final IdentityMap identityMap = new IdentityMap();
+
+    private UnitOfWork(ConnectionProvider connectionProvider, ConnectionLease lease, boolean autoCommit) {
+        this.connectionProvider = connectionProvider;
+        this.lease = lease;
+        this.autoCommit = autoCommit;
+    }
+
+    public static UnitOfWork begin(ConnectionProvider connectionProvider) throws SQLException {
+        if (CURRENT.get() != null) {
+            throw new IllegalStateException("A unit of work is already in progress on this thread");
+        }
+
+        // the lease is held until close(), a pool keeps handing the same connection to this thread
+        ConnectionLease lease = connectionProvider.acquire();
+
+        try {
+            Connection connection = lease.connection();
+            boolean autoCommit = connection.getAutoCommit();
+
+            connection.setAutoCommit(false);
+
+            UnitOfWork unitOfWork = new UnitOfWork(connectionProvider, lease, autoCommit);
+            CURRENT.set(unitOfWork);
+
+            return unitOfWork;
+        } catch (SQLException | RuntimeException e) {
+            lease.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Begins a unit of work on the connection(s) of the repository.
+     */
+    public static UnitOfWork begin(GrudRepository<?> repository) throws SQLException {
+        return begin(repository.getConnectionProvider());
+    }
+
+    /**
+     * @return identity map of the unit of work in progress on this thread, if it's on the given provider
+     */
+    static IdentityMap currentIdentityMap(ConnectionProvider connectionProvider) {
+        UnitOfWork unitOfWork = CURRENT.get();
+
+        return unitOfWork != null && unitOfWork.connectionProvider == connectionProvider ? unitOfWork.identityMap : null;
+    }
+
+    public IdentityMap getIdentityMap() {
+        return identityMap;
+    }
+
+    public void commit() throws SQLException {
+        boolean committed = false;
+
+        try {
+            lease.connection().commit();
+            committed = true;
+        } finally {
+            identityMap.clear();
+            lease.transactionEnded(committed);
+        }
+    }
+
+    public void rollback() throws SQLException {
+        try {
+            lease.connection().rollback();
+        } finally {
+            identityMap.clear();
+            lease.transactionEnded(false);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            rollback();
+            lease.connection().setAutoCommit(autoCommit);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            CURRENT.remove();
+            lease.close();
+        }
+    }
+}
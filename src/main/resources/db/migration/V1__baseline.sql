@@ -0,0 +1,35 @@
+-- The schema of databases/requests-for-create-db.txt, written so that it also brings a database
+-- built by hand from that file up to date.
+
+CREATE TABLE IF NOT EXISTS ADDRESSES (ID BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY, STREET_ADDRESS CHARACTER VARYING(255), ADDRESS2 CHARACTER VARYING(255), CITY CHARACTER VARYING(255), STATE CHARACTER VARYING(2), POSTCODE CHARACTER VARYING(50), COUNTY CHARACTER VARYING(255), REGION CHARACTER VARYING(255), COUNTRY CHARACTER VARYING(100), CONTENT_HASH CHARACTER VARYING(64));
+
+CREATE TABLE IF NOT EXISTS PEOPLE (ID BIGINT AUTO_INCREMENT PRIMARY KEY, FIRST_NAME CHARACTER VARYING(255), LAST_NAME CHARACTER VARYING(255), DOB TIMESTAMP, SALARY NUMERIC, DELETE_FLAG BOOLEAN DEFAULT FALSE NOT NULL, EMAIL CHARACTER VARYING(255),
+HOME_ADDRESS BIGINT, BUSINESS_ADDRESS BIGINT, PARENT_ID BIGINT);
+
+ALTER TABLE ADDRESSES ADD COLUMN IF NOT EXISTS CONTENT_HASH CHARACTER VARYING(64);
+ALTER TABLE PEOPLE ADD COLUMN IF NOT EXISTS EMAIL CHARACTER VARYING(255);
+ALTER TABLE PEOPLE ADD COLUMN IF NOT EXISTS DELETE_FLAG BOOLEAN;
+UPDATE PEOPLE SET DELETE_FLAG = FALSE WHERE DELETE_FLAG IS NULL;
+ALTER TABLE PEOPLE ALTER COLUMN DELETE_FLAG SET DEFAULT FALSE;
+ALTER TABLE PEOPLE ALTER COLUMN DELETE_FLAG SET NOT NULL;
+
+-- The primary key has its own index already
+DROP INDEX IF EXISTS ID_IDX;
+
+CREATE INDEX IF NOT EXISTS ADDRESSES_CONTENT_HASH_IDX ON ADDRESSES (CONTENT_HASH);
+-- findAll/count/purge: live or deleted rows in ID order
+CREATE INDEX IF NOT EXISTS PEOPLE_DELETE_FLAG_IDX ON PEOPLE (DELETE_FLAG, ID);
+-- Children of a person, also each level of FIND_TREE_SQL
+CREATE INDEX IF NOT EXISTS PEOPLE_PARENT_ID_IDX ON PEOPLE (PARENT_ID);
+-- Checking a delete of an address against its users
+CREATE INDEX IF NOT EXISTS PEOPLE_HOME_ADDRESS_IDX ON PEOPLE (HOME_ADDRESS);
+CREATE INDEX IF NOT EXISTS PEOPLE_BUSINESS_ADDRESS_IDX ON PEOPLE (BUSINESS_ADDRESS);
+-- Criteria on PeopleRepository.LAST_NAME, lookups by e-mail
+CREATE INDEX IF NOT EXISTS PEOPLE_LAST_NAME_IDX ON PEOPLE (LAST_NAME);
+CREATE INDEX IF NOT EXISTS PEOPLE_EMAIL_IDX ON PEOPLE (EMAIL);
+
+-- After the indexes, so H2 uses them for the foreign keys instead of creating its own.
+-- A database built by hand keeps its unnamed foreign keys as well, which only costs a second check.
+ALTER TABLE PEOPLE ADD CONSTRAINT IF NOT EXISTS PEOPLE_HOME_ADDRESS_FK FOREIGN KEY (HOME_ADDRESS) REFERENCES ADDRESSES (ID);
+ALTER TABLE PEOPLE ADD CONSTRAINT IF NOT EXISTS PEOPLE_BUSINESS_ADDRESS_FK FOREIGN KEY (BUSINESS_ADDRESS) REFERENCES ADDRESSES (ID);
+ALTER TABLE PEOPLE ADD CONSTRAINT IF NOT EXISTS PEOPLE_PARENT_ID_FK FOREIGN KEY (PARENT_ID) REFERENCES PEOPLE (ID);
@@ -0,0 +1,2 @@
+-- Progress of HrCsvImporter, committed together with each imported chunk
+CREATE TABLE IF NOT EXISTS IMPORT_CHECKPOINT (NAME CHARACTER VARYING(255) PRIMARY KEY, COMMITTED_LINES BIGINT NOT NULL);
@@ -0,0 +1,14 @@
+-- Addresses saved before CONTENT_HASH existed, hashed like AddressRepository.contentHash():
+-- SHA-256 over the UTF-8 of every field followed by 0x01, or 0x00 for a missing one.
+-- The region is hashed by its enum name, like Region.toString(), whatever case the row has it in
+UPDATE ADDRESSES
+SET CONTENT_HASH = RAWTOHEX(HASH('SHA-256',
+        COALESCE(STRINGTOUTF8(STREET_ADDRESS) || X'01', X'00')
+        || COALESCE(STRINGTOUTF8(ADDRESS2) || X'01', X'00')
+        || COALESCE(STRINGTOUTF8(CITY) || X'01', X'00')
+        || COALESCE(STRINGTOUTF8(STATE) || X'01', X'00')
+        || COALESCE(STRINGTOUTF8(POSTCODE) || X'01', X'00')
+        || COALESCE(STRINGTOUTF8(COUNTY) || X'01', X'00')
+        || COALESCE(STRINGTOUTF8(UPPER(REGION)) || X'01', X'00')
+        || COALESCE(STRINGTOUTF8(COUNTRY) || X'01', X'00')))
+WHERE CONTENT_HASH IS NULL;
@@ -0,0 +1,48 @@
+package com.artsiomhanchar.peopledb;
+
+import com.artsiomhanchar.peopledb.migration.MigrationRunner;
+import org.h2.jdbcx.JdbcDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fresh in-memory H2 database with the schema of the migrations, one per call.
+ * It's kept alive by the returned connection, close it to drop the database.
+ */
+public final class TestDatabase implements AutoCloseable {
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    private final JdbcDataSource dataSource;
+    private final Connection connection;
+
+    private TestDatabase(JdbcDataSource dataSource, Connection connection) {
+        this.dataSource = dataSource;
+        this.connection = connection;
+    }
+
+    public static TestDatabase create() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:peopledb" + COUNTER.incrementAndGet());
+
+        Connection connection = dataSource.getConnection();
+
+        new MigrationRunner(connection).migrate();
+
+        return new TestDatabase(dataSource, connection);
+    }
+
+    public JdbcDataSource dataSource() {
+        return dataSource;
+    }
+
+    public Connection connection() {
+        return connection;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        connection.close();
+    }
+}
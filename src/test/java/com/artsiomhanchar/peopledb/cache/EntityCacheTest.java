@@ -0,0 +1,146 @@
+package com.artsiomhanchar.peopledb.cache;
+
+import com.artsiomhanchar.peopledb.TestDatabase;
+import com.artsiomhanchar.peopledb.model.Person;
+import com.artsiomhanchar.peopledb.pool.ConnectionPool;
+import com.artsiomhanchar.peopledb.repository.PeopleRepository;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EntityCacheTest {
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        EntityCache<String> cache = new EntityCache<>(2, Duration.ZERO);
+
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+        cache.get(1L, id -> Optional.empty());
+        cache.put(3L, "three");
+
+        assertThat(cache.get(2L, id -> Optional.empty())).isEmpty();
+        assertThat(cache.get(1L, id -> Optional.empty())).contains("one");
+        assertThat(cache.getMetrics().evictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void boundsTotalWeight() {
+        EntityCache<String> cache = new EntityCache<>(10, String::length, Duration.ZERO);
+
+        cache.put(1L, "four");
+        cache.put(2L, "five!");
+        cache.put(3L, "six!!!");
+
+        assertThat(cache.getMetrics().weight()).isLessThanOrEqualTo(10);
+        assertThat(cache.getMetrics().size()).isEqualTo(1);
+    }
+
+    @Test
+    public void expiresEntriesAfterTtl() throws InterruptedException {
+        EntityCache<String> cache = new EntityCache<>(10, Duration.ofMillis(20));
+
+        cache.put(1L, "one");
+        Thread.sleep(40);
+
+        assertThat(cache.get(1L, id -> Optional.of("reloaded"))).contains("reloaded");
+        assertThat(cache.getMetrics().expirationCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void invalidatesDependentsByReverseIndex() {
+        EntityCache<String> cache = new EntityCache<>(2, Duration.ZERO);
+        cache.setDependencyKeys(value -> List.of(value.length()));
+
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+        cache.put(3L, "three");
+        cache.invalidateDependents(3);
+
+        // "one" was evicted, its key is gone from the index too
+        assertThat(cache.getMetrics().size()).isEqualTo(1);
+        assertThat(cache.getMetrics().invalidationCount()).isEqualTo(1);
+        assertThat(cache.get(3L, id -> Optional.empty())).contains("three");
+
+        cache.invalidateDependents(5);
+        assertThat(cache.getMetrics().size()).isZero();
+    }
+
+    @Test
+    public void servesRepeatedReadsAndInvalidatesOnWrites() throws SQLException {
+        try (TestDatabase database = TestDatabase.create()) {
+            PeopleRepository repo = new PeopleRepository(database.connection());
+            EntityCache<Person> cache = new EntityCache<>(100, Duration.ofMinutes(5));
+            repo.setEntityCache(cache);
+
+            Person john = repo.save(newPerson("John"));
+
+            Person found = repo.findById(john.getId()).get();
+            assertThat(repo.findById(john.getId()).get()).isNotSameAs(found).isEqualTo(found);
+            assertThat(cache.getMetrics().hitRatio()).isEqualTo(0.5);
+
+            // every caller gets a copy of its own
+            found.setFirstName("Changed");
+            assertThat(repo.findById(john.getId()).get().getFirstName()).isEqualTo("John");
+
+            john.setFirstName("Johnny");
+            repo.update(john);
+            assertThat(repo.findById(john.getId()).get().getFirstName()).isEqualTo("Johnny");
+
+            // the cached parent holds its children
+            Person child = newPerson("Jenny");
+            child.setParent(john);
+            repo.save(child);
+            assertThat(repo.findById(john.getId()).get().getChildren()).hasSize(1);
+
+            repo.delete(child);
+            assertThat(repo.findById(john.getId()).get().getChildren()).isEmpty();
+            assertThat(cache.getMetrics().invalidationCount()).isGreaterThanOrEqualTo(3);
+        }
+    }
+
+    @Test
+    public void isInvalidatedWhenTheTransactionEnds() throws Exception {
+        try (TestDatabase database = TestDatabase.create(); ConnectionPool pool = new ConnectionPool(database.dataSource(), 2)) {
+            PeopleRepository repo = new PeopleRepository(pool);
+            EntityCache<Person> cache = new EntityCache<>(100, Duration.ofMinutes(5));
+            repo.setEntityCache(cache);
+
+            Person john = repo.save(newPerson("John"));
+
+            pool.inTransaction(() -> {
+                john.setFirstName("Johnny");
+                repo.update(john);
+
+                // nothing read in a transaction is cached, another thread caches the committed state
+                assertThat(repo.findById(john.getId()).get().getFirstName()).isEqualTo("Johnny");
+                assertThat(CompletableFuture.supplyAsync(() -> repo.findById(john.getId()).get().getFirstName()).join())
+                        .isEqualTo("John");
+
+                return null;
+            });
+
+            assertThat(repo.findById(john.getId()).get().getFirstName()).isEqualTo("Johnny");
+
+            assertThatThrownBy(() -> pool.inTransaction(() -> {
+                john.setFirstName("Rolled back");
+                repo.update(john);
+                throw new IllegalStateException("rollback");
+            })).isInstanceOf(IllegalStateException.class);
+
+            assertThat(repo.findById(john.getId()).get().getFirstName()).isEqualTo("Johnny");
+        }
+    }
+
+    private static Person newPerson(String firstName) {
+        return new Person(firstName, "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+    }
+}
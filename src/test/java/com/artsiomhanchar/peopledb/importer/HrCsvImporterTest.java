@@ -0,0 +1,230 @@
+package com.artsiomhanchar.peopledb.importer;
+
+import com.artsiomhanchar.peopledb.TestDatabase;
+import com.artsiomhanchar.peopledb.model.Person;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HrCsvImporterTest {
+    private static final String HEADER = "Emp ID,Name Prefix,First Name,Middle Initial,Last Name,Gender,E Mail,Father's Name,Mother's Name,Mother's Maiden Name,Date of Birth,Time of Birth,Age in Yrs.,Weight in Kgs.,Date of Joining,Quarter of Joining,Half of Joining,Year of Joining,Month of Joining,Month Name of Joining,Short Month,Day of Joining,DOW of Joining,Short DOW,Age in Company (Years),Salary,Last % Hike";
+
+    @TempDir
+    Path tempDir;
+
+    private TestDatabase database;
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        database = TestDatabase.create();
+        connection = database.connection();
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        database.close();
+    }
+
+    @Test
+    public void canParseLine() {
+        Person person = HrCsvImporter.toPerson(line(1));
+
+        assertThat(person.getFirstName()).isEqualTo("John1");
+        assertThat(person.getDob()).isEqualTo(ZonedDateTime.of(1982, 9, 21, 13, 50, 30, 0, ZoneId.of("+0")));
+        assertThat(person.getSalary()).isEqualTo(new BigDecimal("79640"));
+        assertThat(person.getEmail()).isEqualTo("john1@example.com");
+    }
+
+    @Test
+    public void canSplitQuotedFields() {
+        assertThat(HrCsvImporter.splitFields("1,\"Smith, Jr.\",\"say \"\"hi\"\"\",,"))
+                .containsExactly("1", "Smith, Jr.", "say \"hi\"", "", "");
+        assertThatThrownBy(() -> HrCsvImporter.splitFields("1,\"Smith"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void canParseLineWithQuotedComma() {
+        Person person = HrCsvImporter.toPerson(line(1).replace("Smith", "\"Smith, Jr.\""));
+
+        assertThat(person.getLastName()).isEqualTo("Smith, Jr.");
+        assertThat(person.getSalary()).isEqualTo(new BigDecimal("79640"));
+    }
+
+    @Test
+    public void canImportWithPipeline() throws IOException, SQLException {
+        Path csv = writeCsv(25, true);
+        List<ImportProgress> progress = new ArrayList<>();
+
+        HrCsvImporter importer = new HrCsvImporter(connection);
+        importer.setWorkerCount(3);
+        importer.setChunkSize(4);
+        importer.setQueueCapacity(2);
+        importer.setProgressListener(progress::add);
+
+        ImportProgress result = importer.importFile(csv);
+
+        assertThat(result.importedRows()).isEqualTo(25);
+        assertThat(result.rejectedRows()).isEqualTo(1);
+        assertThat(result.committedLines()).isEqualTo(26);
+        assertThat(progress).extracting(ImportProgress::committedLines).isSorted();
+        assertThat(progress).flatExtracting(ImportProgress::rejectedLines)
+                .singleElement()
+                .satisfies(rejected -> {
+                    assertThat(rejected.lineNumber()).isEqualTo(13);
+                    assertThat(rejected.line()).isEqualTo("broken,line");
+                    assertThat(rejected.cause()).isInstanceOf(IndexOutOfBoundsException.class);
+                });
+        assertThat(countPeople()).isEqualTo(25);
+    }
+
+    @Test
+    public void canResumeFromCheckpoint() throws IOException, SQLException {
+        Path csv = writeCsv(25, false);
+        ImportCheckpoint checkpoint = new ImportCheckpoint("Hr.csv");
+        checkpoint.save(connection, 20);
+
+        HrCsvImporter importer = new HrCsvImporter(connection);
+        importer.setChunkSize(3);
+        importer.setCheckpoint(checkpoint);
+
+        ImportProgress result = importer.importFile(csv);
+
+        assertThat(result.importedRows()).isEqualTo(5);
+        assertThat(checkpoint.load(connection)).isEqualTo(25);
+        assertThat(countPeople()).isEqualTo(5);
+    }
+
+    @Test
+    public void checkpointIsRolledBackWithItsChunk() throws IOException, SQLException {
+        Path csv = writeCsv(10, false);
+        ImportCheckpoint checkpoint = new ImportCheckpoint("Hr.csv");
+
+        HrCsvImporter importer = new HrCsvImporter(connection);
+        importer.setWorkerCount(1);
+        importer.setChunkSize(4);
+        importer.setCheckpoint(checkpoint);
+        importer.setProgressListener(progress -> {
+            if (progress.committedLines() == 8) {
+                // fails the third chunk, the first two stay committed
+                throw new IllegalStateException("Crash");
+            }
+        });
+
+        assertThatThrownBy(() -> importer.importFile(csv)).hasMessage("Crash");
+
+        assertThat(checkpoint.load(connection)).isEqualTo(8);
+        assertThat(countPeople()).isEqualTo(8);
+
+        importer.setProgressListener(progress -> { });
+        importer.importFile(csv);
+
+        assertThat(checkpoint.load(connection)).isEqualTo(10);
+        assertThat(countPeople()).isEqualTo(10);
+    }
+
+    @Test
+    public void failedChunkIsRolledBackAndResumedWithoutDuplicates() throws IOException, SQLException {
+        List<String> lines = new ArrayList<>(List.of(HEADER));
+
+        for (int i = 1; i <= 6; i++) {
+            lines.add(line(i));
+        }
+
+        // the fifth row is too long for FIRST_NAME, the insert fails in the middle of the second chunk
+        lines.set(5, line(5).replace("John5", "J".repeat(256)));
+        Path csv = Files.write(tempDir.resolve("Hr.csv"), lines);
+        ImportCheckpoint checkpoint = new ImportCheckpoint("Hr.csv");
+
+        HrCsvImporter importer = new HrCsvImporter(connection);
+        importer.setWorkerCount(1);
+        importer.setChunkSize(3);
+        importer.setCheckpoint(checkpoint);
+
+        assertThatThrownBy(() -> importer.importFile(csv)).isInstanceOf(RuntimeException.class);
+
+        assertThat(connection.getAutoCommit()).isTrue();
+        assertThat(checkpoint.load(connection)).isEqualTo(3);
+        assertThat(countPeople()).isEqualTo(3);
+
+        lines.set(5, line(5));
+        Files.write(csv, lines);
+        importer.importFile(csv);
+
+        assertThat(checkpoint.load(connection)).isEqualTo(6);
+        assertThat(countPeople()).isEqualTo(6);
+
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(DISTINCT EMAIL) FROM PEOPLE")) {
+            rs.next();
+
+            assertThat(rs.getLong(1)).isEqualTo(6);
+        }
+    }
+
+    @Test
+    public void canImportWithCsvRead() throws IOException, SQLException {
+        Path csv = writeCsv(10, false);
+
+        HrCsvImporter importer = new HrCsvImporter(connection);
+        importer.setProgressListener(progress -> { });
+
+        ImportProgress result = importer.importWithCsvRead(csv);
+
+        assertThat(result.importedRows()).isEqualTo(10);
+
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT DOB, SALARY FROM PEOPLE WHERE FIRST_NAME = 'John1'")) {
+            rs.next();
+
+            assertThat(rs.getTimestamp("DOB").toLocalDateTime()).isEqualTo("1982-09-21T13:50:30");
+            assertThat(rs.getBigDecimal("SALARY")).isEqualByComparingTo("79640");
+        }
+    }
+
+    private Path writeCsv(int rows, boolean withMalformedRow) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER);
+
+        for (int i = 1; i <= rows; i++) {
+            lines.add(line(i));
+
+            if (withMalformedRow && i == rows / 2) {
+                lines.add("broken,line");
+            }
+        }
+
+        return Files.write(tempDir.resolve("Hr.csv"), lines);
+    }
+
+    private static String line(int i) {
+        return String.format("%d,Mr.,John%d,A,Smith,M,john%d@example.com,F,M,MM,9/21/1982,01:50:30 PM,38,60,2/1/2008,Q1,H1,2008,2,February,Feb,1,Friday,Fri,9,79640,5%%", i, i, i);
+    }
+
+    private long countPeople() throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM PEOPLE")) {
+            rs.next();
+
+            return rs.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.artsiomhanchar.peopledb.migration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MigrationRunnerTest {
+    private Connection connection;
+    private MigrationRunner runner;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:migrationrunnertest");
+        runner = new MigrationRunner(connection);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    public void canMigrateEmptyDatabase() throws SQLException {
+        List<Migration> applied = runner.migrate();
+
+        assertThat(applied).extracting(Migration::version).containsExactly(1, 2, 3);
+        assertThat(indexesOf("PEOPLE")).containsExactlyInAnyOrder(
+                "PEOPLE_DELETE_FLAG_IDX", "PEOPLE_PARENT_ID_IDX", "PEOPLE_HOME_ADDRESS_IDX",
+                "PEOPLE_BUSINESS_ADDRESS_IDX", "PEOPLE_LAST_NAME_IDX", "PEOPLE_EMAIL_IDX"
+        );
+    }
+
+    @Test
+    public void appliesEachMigrationOnce() {
+        runner.migrate();
+
+        assertThat(runner.migrate()).isEmpty();
+    }
+
+    @Test
+    public void failsOnChangedMigration() throws SQLException {
+        runner.migrate();
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("UPDATE SCHEMA_HISTORY SET CHECKSUM = 'changed' WHERE VERSION = 1");
+        }
+
+        assertThatThrownBy(runner::migrate)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("V1");
+    }
+
+    @Test
+    public void canUpgradeDatabaseBuiltByHand() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("""
+                    CREATE TABLE PEOPLE(ID BIGINT AUTO_INCREMENT PRIMARY KEY, FIRST_NAME CHARACTER VARYING(255), LAST_NAME CHARACTER VARYING(255), DOB TIMESTAMP, SALARY NUMERIC);
+                    CREATE INDEX ID_IDX ON PEOPLE(ID);
+                    CREATE TABLE ADDRESSES (ID BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY, STREET_ADDRESS CHARACTER VARYING(255), ADDRESS2 CHARACTER VARYING(255), CITY CHARACTER VARYING(255), STATE CHARACTER VARYING(2), POSTCODE CHARACTER VARYING(50), COUNTY CHARACTER VARYING(255), REGION CHARACTER VARYING(255), COUNTRY CHARACTER VARYING(100));
+                    ALTER TABLE PEOPLE ADD COLUMN HOME_ADDRESS BIGINT REFERENCES ADDRESSES (ID);
+                    ALTER TABLE PEOPLE ADD COLUMN BUSINESS_ADDRESS BIGINT REFERENCES ADDRESSES (ID);
+                    ALTER TABLE PEOPLE ADD COLUMN PARENT_ID BIGINT REFERENCES PEOPLE (ID);
+                    INSERT INTO PEOPLE (FIRST_NAME, LAST_NAME) VALUES ('John', 'Smith');
+                    """);
+        }
+
+        runner.migrate();
+
+        assertThat(indexesOf("PEOPLE")).doesNotContain("ID_IDX").contains("PEOPLE_PARENT_ID_IDX", "PEOPLE_EMAIL_IDX");
+
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM PEOPLE WHERE DELETE_FLAG = FALSE")) {
+            rs.next();
+            assertThat(rs.getLong(1)).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void childrenAreFoundByIndex() throws SQLException {
+        runner.migrate();
+
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("EXPLAIN SELECT ID FROM PEOPLE WHERE PARENT_ID = 1 AND DELETE_FLAG = FALSE")) {
+            rs.next();
+            assertThat(rs.getString(1)).contains("PEOPLE_PARENT_ID_IDX");
+        }
+    }
+
+    private List<String> indexesOf(String table) throws SQLException {
+        List<String> indexes = new ArrayList<>();
+
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT INDEX_NAME FROM INFORMATION_SCHEMA.INDEXES WHERE TABLE_NAME = '" + table + "' AND INDEX_TYPE_NAME <> 'PRIMARY KEY'")) {
+            while (rs.next()) {
+                indexes.add(rs.getString(1));
+            }
+        }
+
+        return indexes;
+    }
+}
@@ -0,0 +1,215 @@
+package com.artsiomhanchar.peopledb.pool;
+
+import com.artsiomhanchar.peopledb.TestDatabase;
+import com.artsiomhanchar.peopledb.model.Address;
+import com.artsiomhanchar.peopledb.model.Person;
+import com.artsiomhanchar.peopledb.model.Region;
+import com.artsiomhanchar.peopledb.repository.PeopleRepository;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConnectionPoolTest {
+    private TestDatabase database;
+    private JdbcDataSource dataSource;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        database = TestDatabase.create();
+        dataSource = database.dataSource();
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        database.close();
+    }
+
+    @Test
+    public void canServeConcurrentRequests() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try (ConnectionPool pool = new ConnectionPool(dataSource, 2)) {
+            PeopleRepository repo = new PeopleRepository(pool);
+            List<Future<Person>> futures = new ArrayList<>();
+
+            for (int i = 0; i < 40; i++) {
+                String firstName = "John" + i;
+                futures.add(executor.submit(() -> repo.save(newPerson(firstName))));
+            }
+
+            for (Future<Person> future : futures) {
+                assertThat(future.get().getId()).isGreaterThan(0);
+            }
+
+            PoolMetrics metrics = pool.getMetrics();
+
+            assertThat(repo.count()).isEqualTo(40);
+            assertThat(metrics.openConnections()).isLessThanOrEqualTo(2);
+            assertThat(metrics.activeConnections()).isZero();
+            assertThat(metrics.borrowCount()).isGreaterThanOrEqualTo(40);
+            assertThat(metrics.statementCacheHits()).isGreaterThan(0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void nestedOperationsShareOneConnection() {
+        try (ConnectionPool pool = new ConnectionPool(dataSource, 1, Duration.ofSeconds(1), Duration.ZERO)) {
+            PeopleRepository repo = new PeopleRepository(pool);
+            Person john = newPerson("John");
+            john.setHomeAddress(new Address(null, "123 Beale St.", "Apt. 1A", "Wala Wala", "WA", "90210", "United States", "Fulton County", Region.WEST));
+            john.addChild(newPerson("Johnny"));
+
+            repo.save(john);
+
+            assertThat(repo.findById(john.getId()).get().getChildren()).hasSize(1);
+            assertThat(pool.getMetrics().openConnections()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void canPinConnectionForTransaction() throws SQLException {
+        try (ConnectionPool pool = new ConnectionPool(dataSource, 2)) {
+            PeopleRepository repo = new PeopleRepository(pool);
+
+            pool.inTransaction(() -> repo.save(newPerson("John")));
+
+            assertThatThrownBy(() -> pool.inTransaction(() -> {
+                repo.save(newPerson("Bobby"));
+                throw new IllegalStateException("Rollback, please");
+            })).isInstanceOf(IllegalStateException.class);
+
+            assertThat(repo.count()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void nestedTransactionJoinsOuterOne() throws SQLException {
+        try (ConnectionPool pool = new ConnectionPool(dataSource, 2)) {
+            PeopleRepository repo = new PeopleRepository(pool);
+
+            assertThatThrownBy(() -> pool.inTransaction(() -> {
+                repo.save(newPerson("John"));
+                pool.inTransaction(() -> repo.save(newPerson("Bobby")));
+                throw new IllegalStateException("Rollback, please");
+            })).isInstanceOf(IllegalStateException.class);
+
+            assertThat(repo.count()).isZero();
+
+            pool.inTransaction(() -> {
+                repo.save(newPerson("John"));
+
+                assertThatThrownBy(() -> pool.inTransaction(() -> {
+                    repo.save(newPerson("Bobby"));
+                    throw new IllegalStateException("Rollback, please");
+                })).isInstanceOf(IllegalStateException.class);
+
+                return null;
+            });
+
+            assertThat(repo.findAll()).extracting(Person::getFirstName).containsExactly("John");
+        }
+    }
+
+    @Test
+    public void streamCanBeClosedOnAnotherThread() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try (ConnectionPool pool = new ConnectionPool(dataSource, 2)) {
+            PeopleRepository repo = new PeopleRepository(pool);
+            repo.save(newPerson("John"));
+
+            Stream<Person> people = repo.streamAll();
+            executor.submit(people::close).get();
+
+            assertThat(pool.getMetrics().activeConnections()).isZero();
+
+            // the stale binding of this thread isn't used again
+            try (ConnectionLease lease = pool.acquire()) {
+                assertThat(pool.getMetrics().activeConnections()).isEqualTo(1);
+            }
+
+            assertThat(pool.getMetrics().activeConnections()).isZero();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void timesOutWhenPoolIsExhausted() throws Exception {
+        CountDownLatch borrowed = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try (ConnectionPool pool = new ConnectionPool(dataSource, 1, Duration.ofMillis(50), Duration.ZERO)) {
+            executor.submit(() -> {
+                try (ConnectionLease lease = pool.acquire()) {
+                    borrowed.countDown();
+                    done.await();
+                }
+                return null;
+            });
+            borrowed.await();
+
+            assertThatThrownBy(pool::acquire).isInstanceOf(SQLException.class);
+            assertThat(pool.getMetrics().timeoutCount()).isEqualTo(1);
+
+            done.countDown();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void reportsLeakedConnections() throws Exception {
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+
+        try (ConnectionPool pool = new ConnectionPool(dataSource, 1, Duration.ofSeconds(1), Duration.ofMillis(20), errors::add)) {
+            try (ConnectionLease lease = pool.acquire()) {
+                Thread.sleep(200);
+            }
+
+            assertThat(pool.getMetrics().leakCount()).isEqualTo(1);
+            assertThat(errors).singleElement()
+                    .isInstanceOf(IllegalStateException.class)
+                    .satisfies(leak -> assertThat(leak.getCause()).hasMessageContaining(Thread.currentThread().getName()));
+        }
+    }
+
+    @Test
+    public void reportsConnectionThatFailsWhenGivenBack() throws Exception {
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+
+        try (ConnectionPool pool = new ConnectionPool(dataSource, 1, Duration.ofSeconds(1), Duration.ZERO, errors::add)) {
+            try (ConnectionLease lease = pool.acquire()) {
+                lease.connection().close();
+            }
+
+            assertThat(errors).singleElement().isInstanceOf(SQLException.class);
+            assertThat(pool.getMetrics().openConnections()).isZero();
+            assertThat(new PeopleRepository(pool).count()).isZero();
+        }
+    }
+
+    private static Person newPerson(String firstName) {
+        return new Person(firstName, "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+    }
+}
@@ -0,0 +1,254 @@
+package com.artsiomhanchar.peopledb.repository;
+
+import com.artsiomhanchar.peopledb.TestDatabase;
+import com.artsiomhanchar.peopledb.migration.MigrationRunner;
+import com.artsiomhanchar.peopledb.model.Address;
+import com.artsiomhanchar.peopledb.model.Person;
+import com.artsiomhanchar.peopledb.model.Region;
+import com.artsiomhanchar.peopledb.pool.ConnectionPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AddressRepositoryTest {
+    private TestDatabase database;
+    private PeopleRepository repo;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        database = TestDatabase.create();
+        repo = new PeopleRepository(database.connection());
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        database.close();
+    }
+
+    @Test
+    public void doesNotInsertSavedAddressAgain() throws SQLException {
+        Address address = newAddress("123 Beale St.");
+        Person john = newPerson("John");
+        john.setHomeAddress(address);
+        repo.save(john);
+
+        Person bobby = newPerson("Bobby");
+        bobby.setHomeAddress(john.getHomeAddress().get());
+        bobby.setBusinessAddress(john.getHomeAddress().get());
+        repo.save(bobby);
+
+        assertThat(countAddresses()).isEqualTo(1);
+    }
+
+    @Test
+    public void canDeduplicateAddressesByContent() throws SQLException {
+        repo.setDeduplicateAddresses(true);
+
+        Person john = newPerson("John");
+        john.setHomeAddress(newAddress("123 Beale St."));
+        repo.save(john);
+
+        Person bobby = newPerson("Bobby");
+        bobby.setHomeAddress(newAddress("123 Beale St."));
+        bobby.setBusinessAddress(newAddress("1 Main St."));
+        repo.save(bobby);
+
+        assertThat(bobby.getHomeAddress().get().id()).isEqualTo(john.getHomeAddress().get().id());
+        assertThat(countAddresses()).isEqualTo(2);
+    }
+
+    @Test
+    public void canDeduplicateAddressesInBatches() throws SQLException {
+        repo.setDeduplicateAddresses(true);
+
+        Person john = newPerson("John");
+        john.setHomeAddress(newAddress("123 Beale St."));
+        repo.save(john);
+
+        List<Person> people = new ArrayList<>();
+
+        for (int i = 0; i < 20; i++) {
+            Person person = newPerson("John" + i);
+            person.setHomeAddress(newAddress(i % 2 == 0 ? "123 Beale St." : "1 Main St."));
+            person.setBusinessAddress(newAddress("1 Main St."));
+            people.add(person);
+        }
+
+        repo.saveAll(people, 8);
+
+        assertThat(people).allSatisfy(person -> assertThat(person.getBusinessAddress().get().id()).isNotNull());
+        assertThat(people.get(0).getHomeAddress().get().id()).isEqualTo(john.getHomeAddress().get().id());
+        assertThat(countAddresses()).isEqualTo(2);
+    }
+
+    @Test
+    public void doesNotRememberAddressesOfRolledBackTransaction() throws SQLException {
+        try (ConnectionPool pool = new ConnectionPool(database.dataSource(), 1)) {
+            AddressRepository addressRepository = new AddressRepository(pool);
+            addressRepository.setDeduplicateByContent(true);
+
+            assertThatThrownBy(() -> pool.inTransaction(() -> {
+                addressRepository.findOrSave(newAddress("123 Beale St."));
+                throw new IllegalStateException("Rollback");
+            })).hasMessage("Rollback");
+
+            Address saved = addressRepository.findOrSave(newAddress("123 Beale St."));
+
+            assertThat(addressRepository.findById(saved.id())).isPresent();
+            assertThat(countAddresses()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void doesNotRememberAddressesRolledBackToSavepoint() throws SQLException {
+        try (ConnectionPool pool = new ConnectionPool(database.dataSource(), 1)) {
+            AddressRepository addressRepository = new AddressRepository(pool);
+            addressRepository.setDeduplicateByContent(true);
+
+            Address kept = pool.inTransaction(() -> {
+                try {
+                    pool.inTransaction(() -> {
+                        addressRepository.findOrSave(newAddress("123 Beale St."));
+                        throw new IllegalStateException("Rollback");
+                    });
+                } catch (IllegalStateException e) {
+                    // only the nested work is rolled back
+                }
+
+                return addressRepository.findOrSave(newAddress("1 Main St."));
+            });
+
+            Address saved = addressRepository.findOrSave(newAddress("123 Beale St."));
+
+            assertThat(addressRepository.findById(saved.id())).isPresent();
+            assertThat(addressRepository.findOrSave(newAddress("1 Main St.")).id()).isEqualTo(kept.id());
+            assertThat(countAddresses()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void canUpdateAddressKeepingContentHash() {
+        AddressRepository addressRepository = new AddressRepository(database.connection());
+        addressRepository.setDeduplicateByContent(true);
+        Address saved = addressRepository.findOrSave(newAddress("123 Beale St."));
+
+        addressRepository.update(new Address(saved.id(), "1 Main St.", "Apt. 1A", "Wala Wala", "WA", "90210", "United States", "Fulton County", Region.WEST));
+
+        assertThat(addressRepository.findById(saved.id()).get().streetAddress()).isEqualTo("1 Main St.");
+        assertThat(addressRepository.findOrSave(newAddress("1 Main St.")).id()).isEqualTo(saved.id());
+        assertThat(addressRepository.findOrSave(newAddress("123 Beale St.")).id()).isNotEqualTo(saved.id());
+    }
+
+    @Test
+    public void hashesContentWithoutId() {
+        assertThat(AddressRepository.contentHash(newAddress("123 Beale St.")))
+                .isEqualTo(AddressRepository.contentHash(new Address(42L, "123 Beale St.", "Apt. 1A", "Wala Wala", "WA", "90210", "United States", "Fulton County", Region.WEST)))
+                .isNotEqualTo(AddressRepository.contentHash(newAddress("1 Main St.")))
+                .hasSize(64);
+    }
+
+    @Test
+    public void backfillsContentHashOfAddressesSavedBeforeUpgrade() throws SQLException {
+        try (Statement stmt = database.connection().createStatement()) {
+            stmt.execute("""
+                    INSERT INTO ADDRESSES (STREET_ADDRESS, ADDRESS2, CITY, STATE, POSTCODE, COUNTY, REGION, COUNTRY)
+                    VALUES ('123 Beale St.', 'Apt. 1A', 'Wala Wala', 'WA', '90210', 'Fulton County', 'WEST', 'United States'),
+                           ('Łódź Straße 1', NULL, 'Wala Wala', 'WA', '90210', 'Fulton County', 'West', 'United States')
+                    """);
+            // as if the database was upgraded from a version before the backfill
+            stmt.execute("DELETE FROM SCHEMA_HISTORY WHERE VERSION = 3");
+        }
+
+        new MigrationRunner(database.connection()).migrate();
+
+        AddressRepository addressRepository = new AddressRepository(database.connection());
+        addressRepository.setDeduplicateByContent(true);
+
+        assertThat(addressRepository.findOrSave(newAddress("123 Beale St.")).id()).isNotNull();
+        assertThat(addressRepository.findOrSave(new Address(null, "Łódź Straße 1", null, "Wala Wala", "WA", "90210", "United States", "Fulton County", Region.WEST)).id()).isNotNull();
+        assertThat(countAddresses()).isEqualTo(2);
+    }
+
+    @Test
+    public void resolvesSqlFromGettersOnceSubclassIsConstructed() {
+        TableAddressRepository addressRepository = new TableAddressRepository(database.connection(), "addresses");
+
+        Address saved = addressRepository.save(newAddress("123 Beale St."));
+
+        assertThat(addressRepository.findById(saved.id())).isPresent();
+    }
+
+    @Test
+    public void doesNotTakeFailingSqlGetterForUnsupportedOperation() {
+        BrokenAddressRepository addressRepository = new BrokenAddressRepository(database.connection());
+
+        assertThatThrownBy(() -> addressRepository.findById(1L))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Broken COUNT SQL");
+    }
+
+    private long countAddresses() throws SQLException {
+        try (Statement stmt = database.connection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM ADDRESSES")) {
+            rs.next();
+
+            return rs.getLong(1);
+        }
+    }
+
+    private static Address newAddress(String streetAddress) {
+        return new Address(null, streetAddress, "Apt. 1A", "Wala Wala", "WA", "90210", "United States", "Fulton County", Region.WEST);
+    }
+
+    private static Person newPerson(String firstName) {
+        return new Person(firstName, "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+    }
+
+    /**
+     * Builds its SQL from a field set in its constructor, after the one of GrudRepository has run.
+     */
+    private static class TableAddressRepository extends AddressRepository {
+        private final String table;
+
+        TableAddressRepository(Connection connection, String table) {
+            super(connection);
+            this.table = table;
+        }
+
+        @Override
+        String getSaveSQL() {
+            return "INSERT INTO " + table.toUpperCase()
+                    + " (STREET_ADDRESS, ADDRESS2, CITY, STATE, POSTCODE, COUNTY, REGION, COUNTRY, CONTENT_HASH)"
+                    + " VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        }
+
+        @Override
+        protected String getFindByIdSQL() {
+            return "SELECT ID, STREET_ADDRESS, ADDRESS2, CITY, STATE, POSTCODE, COUNTY, REGION, COUNTRY FROM "
+                    + table.toUpperCase() + " WHERE ID = ?";
+        }
+    }
+
+    private static class BrokenAddressRepository extends TableAddressRepository {
+        BrokenAddressRepository(Connection connection) {
+            super(connection, "addresses");
+        }
+
+        @Override
+        protected String getCountSQL() {
+            throw new IllegalStateException("Broken COUNT SQL");
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.artsiomhanchar.peopledb.repository;
+
+import com.artsiomhanchar.peopledb.TestDatabase;
+import com.artsiomhanchar.peopledb.model.Person;
+import com.artsiomhanchar.peopledb.pool.ConnectionPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AsyncRepositoryTest {
+    private TestDatabase database;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        database = TestDatabase.create();
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        database.close();
+    }
+
+    @Test
+    public void canRunCrudAsync() {
+        try (ConnectionPool pool = new ConnectionPool(database.dataSource(), 2);
+             AsyncRepository<Person> repo = new AsyncRepository<>(new PeopleRepository(pool), 2)) {
+            Person john = repo.saveAsync(newPerson("John")).join();
+
+            assertThat(repo.findByIdAsync(john.getId()).join()).hasValueSatisfying(found -> assertThat(found.getFirstName()).isEqualTo("John"));
+            assertThat(repo.findAllAsync().join()).hasSize(1);
+
+            repo.deleteAsync(john).join();
+
+            assertThat(repo.countAsync().join()).isZero();
+        }
+    }
+
+    @Test
+    public void boundsConcurrencyToPoolSize() {
+        // a borrow timeout this short fails as soon as two tasks compete for the only connection
+        try (ConnectionPool pool = new ConnectionPool(database.dataSource(), 1, Duration.ofMillis(20), Duration.ZERO);
+             AsyncRepository<Person> repo = new AsyncRepository<>(new PeopleRepository(pool), 1)) {
+            List<CompletableFuture<Person>> futures = new ArrayList<>();
+
+            for (int i = 0; i < 50; i++) {
+                futures.add(repo.saveAsync(newPerson("John" + i)));
+            }
+
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+            assertThat(repo.countAsync().join()).isEqualTo(50);
+            assertThat(pool.getMetrics().timeoutCount()).isZero();
+        }
+    }
+
+    private static Person newPerson(String firstName) {
+        return new Person(firstName, "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+    }
+}
@@ -0,0 +1,167 @@
+package com.artsiomhanchar.peopledb.repository;
+
+import com.artsiomhanchar.peopledb.TestDatabase;
+import com.artsiomhanchar.peopledb.model.Address;
+import com.artsiomhanchar.peopledb.model.Person;
+import com.artsiomhanchar.peopledb.model.PersonSummary;
+import com.artsiomhanchar.peopledb.model.Region;
+import com.artsiomhanchar.peopledb.model.SalaryStatistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.artsiomhanchar.peopledb.repository.PeopleRepository.DOB;
+import static com.artsiomhanchar.peopledb.repository.PeopleRepository.FIRST_NAME;
+import static com.artsiomhanchar.peopledb.repository.PeopleRepository.HOME_REGION;
+import static com.artsiomhanchar.peopledb.repository.PeopleRepository.LAST_NAME;
+import static com.artsiomhanchar.peopledb.repository.PeopleRepository.SALARY;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CriteriaTest {
+    private TestDatabase database;
+    private PeopleRepository repo;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        database = TestDatabase.create();
+        repo = new PeopleRepository(database.connection());
+
+        List<Person> people = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            Person person = new Person("John" + i, i % 2 == 0 ? "Smith" : "Jones", ZonedDateTime.of(1980 + i, 1, 1, 12, 0, 0, 0, ZoneId.of("+0")));
+            person.setSalary(new BigDecimal(10_000 * (i + 1)));
+            person.setHomeAddress(new Address(null, i + " Main St.", null, "Wala Wala", "WA", "90210", "United States", "Fulton County", i < 5 ? Region.WEST : Region.EAST));
+            people.add(person);
+        }
+
+        repo.saveAll(people);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        database.close();
+    }
+
+    @Test
+    public void canFindByEqualityAndRange() {
+        List<Person> found = repo.find(Criteria.where(LAST_NAME).eq("Smith")
+                .and(SALARY).between(new BigDecimal("30000"), new BigDecimal("90000"))
+                .orderByDescending(SALARY)
+                .limit(2));
+
+        assertThat(found).extracting(Person::getFirstName).containsExactly("John8", "John6");
+    }
+
+    @Test
+    public void canFindByDobAndRegionOfHomeAddress() {
+        List<Person> found = repo.find(Criteria.where(HOME_REGION).eq(Region.WEST)
+                .and(DOB).greaterOrEqual(ZonedDateTime.of(1982, 1, 1, 7, 0, 0, 0, ZoneId.of("-5")))
+                .orderBy(FIRST_NAME));
+
+        assertThat(found).extracting(Person::getFirstName).containsExactly("John2", "John3", "John4");
+    }
+
+    @Test
+    public void canProjectIntoSummaries() {
+        List<PersonSummary> found = repo.findSummaries(Criteria.where(HOME_REGION).eq(Region.EAST).orderBy(SALARY).limit(2));
+
+        assertThat(found).containsExactly(
+                new PersonSummary(found.get(0).id(), "John5", "Jones", new BigDecimal("60000")),
+                new PersonSummary(found.get(1).id(), "John6", "Smith", new BigDecimal("70000"))
+        );
+    }
+
+    @Test
+    public void canAggregateSalaryByRegion() {
+        List<SalaryStatistics> statistics = repo.salaryStatistics(Criteria.all(), PersonGrouping.REGION);
+
+        assertThat(statistics).hasSize(2);
+        assertThat(statistics.get(0).group()).containsExactly("EAST");
+        assertThat(statistics.get(0).count()).isEqualTo(5);
+        assertThat(statistics.get(0).total()).isEqualByComparingTo("400000");
+        assertThat(statistics.get(0).average()).isEqualByComparingTo("80000");
+        assertThat(statistics.get(0).min()).isEqualByComparingTo("60000");
+        assertThat(statistics.get(0).max()).isEqualByComparingTo("100000");
+        assertThat(statistics.get(1).group()).containsExactly("WEST");
+    }
+
+    @Test
+    public void canAggregateMatchingPeopleByDecade() {
+        List<SalaryStatistics> statistics = repo.salaryStatistics(Criteria.where(LAST_NAME).eq("Smith"), PersonGrouping.BIRTH_DECADE);
+
+        assertThat(statistics).singleElement().satisfies(decade -> {
+            assertThat(decade.group()).containsExactly("1980");
+            assertThat(decade.count()).isEqualTo(5);
+            assertThat(decade.total()).isEqualByComparingTo("250000");
+        });
+    }
+
+    @Test
+    public void canStreamSalaryStatistics() {
+        try (Stream<SalaryStatistics> statistics = repo.streamSalaryStatistics(Criteria.all().limit(3), PersonGrouping.REGION, PersonGrouping.BIRTH_YEAR)) {
+            assertThat(statistics.map(SalaryStatistics::group)).containsExactly(
+                    List.of("EAST", "1985"), List.of("EAST", "1986"), List.of("EAST", "1987")
+            );
+        }
+    }
+
+    @Test
+    public void generatesSqlOncePerShape() {
+        repo.find(Criteria.where(LAST_NAME).eq("Smith").limit(1));
+        long missCount = repo.getStatementCache().getMissCount();
+
+        List<Person> found = repo.find(Criteria.where(LAST_NAME).eq("Jones").limit(3));
+
+        assertThat(found).hasSize(3);
+        assertThat(repo.getStatementCache().getMissCount()).isEqualTo(missCount);
+    }
+
+    @Test
+    public void joinsHomeAddressOnlyForShapesThatUseIt() {
+        assertThat(repo.explain(Criteria.where(LAST_NAME).eq("Smith")).sql()).doesNotContain("ADDRESSES");
+        assertThat(repo.explain(Criteria.where(LAST_NAME).eq("Smith").orderBy(HOME_REGION)).sql())
+                .contains("JOIN ADDRESSES AS HOME_A")
+                .containsOnlyOnce("WHERE");
+        assertThat(repo.explain(Criteria.where(HOME_REGION).eq(Region.WEST)).sql()).containsOnlyOnce("JOIN ADDRESSES AS HOME_A");
+    }
+
+    @Test
+    public void rejectsUndeclaredAttribute() {
+        Attribute<String> email = Attribute.of("email", "PARENT.EMAIL");
+
+        assertThatThrownBy(() -> repo.find(Criteria.where(email).eq("john@example.com")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("email");
+    }
+
+    @Test
+    public void canExplainIndexUse() throws SQLException {
+        Criteria bySmith = Criteria.where(LAST_NAME).eq("Smith");
+
+        List<QueryPlan> plans = new ArrayList<>();
+        repo.setExplainListener(plans::add);
+        repo.find(bySmith);
+
+        assertThat(plans).singleElement().satisfies(plan -> {
+            assertThat(plan.usesIndex()).isTrue();
+            assertThat(plan.usesIndex("PEOPLE_LAST_NAME_IDX")).isTrue();
+        });
+
+        try (Statement stmt = database.connection().createStatement()) {
+            stmt.execute("DROP INDEX PEOPLE_LAST_NAME_IDX");
+        }
+
+        assertThat(repo.explain(bySmith).usesIndex("PEOPLE_LAST_NAME_IDX")).isFalse();
+    }
+}
@@ -0,0 +1,58 @@
+package com.artsiomhanchar.peopledb.repository;
+
+import com.artsiomhanchar.peopledb.annotation.Id;
+import com.artsiomhanchar.peopledb.model.Address;
+import com.artsiomhanchar.peopledb.model.Person;
+import com.artsiomhanchar.peopledb.model.Region;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdAccessorTest {
+
+    @Test
+    public void canGetAndSetPersonId() {
+        Person person = new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+        IdAccessor accessor = IdAccessor.of(Person.class);
+
+        assertThat(accessor.getId(person)).isNull();
+
+        accessor.setId(person, 42L);
+
+        assertThat(accessor.getId(person)).isEqualTo(42L);
+        assertThat(person.getId()).isEqualTo(42L);
+    }
+
+    @Test
+    public void canSetFinalAddressId() {
+        Address address = new Address(null, "123 Beale St.", "Apt. 1A", "Wala Wala", "WA", "90210", "United States", "Fulton County", Region.WEST);
+
+        IdAccessor.of(Address.class).setId(address, 7L);
+
+        assertThat(address.id()).isEqualTo(7L);
+    }
+
+    @Test
+    public void canAccessIdWithoutAccessorMethods() {
+        Tag tag = new Tag();
+        IdAccessor accessor = IdAccessor.of(Tag.class);
+
+        accessor.setId(tag, 3L);
+
+        assertThat(tag.id).isEqualTo(3L);
+        assertThat(accessor.getId(tag)).isEqualTo(3L);
+    }
+
+    @Test
+    public void accessorIsBuiltOncePerClass() {
+        assertThat(IdAccessor.of(Person.class)).isSameAs(IdAccessor.of(Person.class));
+    }
+
+    private static class Tag {
+        @Id
+        private Long id;
+    }
+}
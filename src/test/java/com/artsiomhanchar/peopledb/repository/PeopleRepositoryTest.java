@@ -1,37 +1,46 @@
 package com.artsiomhanchar.peopledb.repository;
 
+import com.artsiomhanchar.peopledb.TestDatabase;
+import com.artsiomhanchar.peopledb.exeption.UnableToSaveException;
 import com.artsiomhanchar.peopledb.model.Address;
+import com.artsiomhanchar.peopledb.model.CrudOperation;
 import com.artsiomhanchar.peopledb.model.Person;
+import com.artsiomhanchar.peopledb.model.PersonSummary;
 import com.artsiomhanchar.peopledb.model.Region;
+import com.artsiomhanchar.peopledb.pool.SingleConnectionProvider;
+import com.artsiomhanchar.peopledb.pool.StatementCache;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
-import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
-import java.io.IOException;
+import java.lang.reflect.Proxy;
 import java.math.BigDecimal;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.*;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class PeopleRepositoryTest {
 
+    private TestDatabase database;
     private Connection connection;
     private PeopleRepository repo;
 
     @BeforeEach
     void setUp() throws SQLException {
-        connection = DriverManager.getConnection("jdbc:h2:C:\\Users\\ahanchar\\Desktop\\java\\databases\\peopledb;TRACE_LEVEL_SYSTEM_OUT=0".replace("~", System.getProperty("user.home")));
+        database = TestDatabase.create();
+        connection = database.connection();
         connection.setAutoCommit(false);
 
         repo = new PeopleRepository(connection);
@@ -39,9 +48,7 @@ public class PeopleRepositoryTest {
 
     @AfterEach
     void tearDown() throws SQLException {
-        if (connection != null) {
-            connection.close();
-        }
+        database.close();
     }
 
     @Test
@@ -53,6 +60,18 @@ public class PeopleRepositoryTest {
         assertThat(savedPerson.getId()).isGreaterThan(0);
     }
 
+    @Test
+    public void saveFailureKeepsSqlCause() {
+        Person john = new Person("J".repeat(256), "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+
+        assertThatThrownBy(() -> repo.save(john))
+                .isInstanceOf(UnableToSaveException.class)
+                .hasCauseInstanceOf(SQLException.class);
+        assertThatThrownBy(() -> repo.saveAll(List.of(john)))
+                .isInstanceOf(UnableToSaveException.class)
+                .hasCauseInstanceOf(SQLException.class);
+    }
+
     @Test
     public void canSaveTwoPersons() {
         Person john = new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 00, 0, ZoneId.of("-6")));
@@ -105,6 +124,163 @@ public class PeopleRepositoryTest {
 //        connection.commit();
     }
 
+    @Test
+    public void canSaveFamilyTreeAsGraph() {
+        Address address = new Address(null, "123 Beale St.", "Apt. 1A", "Wala Wala", "WA", "90210", "United States", "Fulton County", Region.WEST);
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1950, 11, 15, 15, 15, 00, 0, ZoneId.of("-6")));
+        john.setHomeAddress(address);
+
+        for (int i = 0; i < 3; i++) {
+            Person child = new Person("Johnny" + i, "Smith", ZonedDateTime.of(1980, 1, 1, 1, 0, 0, 0, ZoneId.of("-6")));
+            child.setHomeAddress(address);
+            child.addChild(new Person("Jenny" + i, "Smith", ZonedDateTime.of(2010, 5, 1, 1, 0, 0, 0, ZoneId.of("-6"))));
+            john.addChild(child);
+        }
+
+        repo.saveGraph(john);
+
+        Person foundJohn = repo.findById(john.getId()).get();
+
+        assertThat(foundJohn.getChildren()).hasSize(3);
+        assertThat(foundJohn.getHomeAddress().get().id()).isEqualTo(address.id());
+        john.getChildren().forEach(child -> {
+            assertThat(repo.findById(child.getId()).get().getChildren()).hasSize(1);
+            assertThat(child.getHomeAddress().get().id()).isEqualTo(address.id());
+        });
+    }
+
+    @Test
+    public void canFindTreeInOneQuery() {
+        Address address = new Address(null, "123 Beale St.", "Apt. 1A", "Wala Wala", "WA", "90210", "United States", "Fulton County", Region.WEST);
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1930, 11, 15, 15, 15, 00, 0, ZoneId.of("-6")));
+        Person johnny = new Person("Johnny", "Smith", ZonedDateTime.of(1955, 1, 1, 1, 0, 0, 0, ZoneId.of("-6")));
+        Person jenny = new Person("Jenny", "Smith", ZonedDateTime.of(1980, 5, 1, 1, 0, 0, 0, ZoneId.of("-6")));
+        jenny.setHomeAddress(address);
+        jenny.addChild(new Person("Jake", "Smith", ZonedDateTime.of(2010, 5, 1, 1, 0, 0, 0, ZoneId.of("-6"))));
+        johnny.addChild(jenny);
+        john.addChild(johnny);
+        john.addChild(new Person("Sarah", "Smith", ZonedDateTime.of(1957, 1, 1, 1, 0, 0, 0, ZoneId.of("-6"))));
+        repo.saveGraph(john);
+
+        long queriesBefore = repo.getStatementCache().getMissCount() + repo.getStatementCache().getHitCount();
+        Person tree = repo.findTreeById(john.getId(), 2, true).get();
+
+        assertThat(repo.getStatementCache().getMissCount() + repo.getStatementCache().getHitCount()).isEqualTo(queriesBefore + 1);
+        assertThat(tree.getChildren()).extracting(Person::getFirstName).containsExactlyInAnyOrder("Johnny", "Sarah");
+
+        Person foundJenny = tree.getChildren().stream().filter(child -> child.getFirstName().equals("Johnny")).findFirst().get()
+                .getChildren().iterator().next();
+
+        assertThat(foundJenny.getFirstName()).isEqualTo("Jenny");
+        assertThat(foundJenny.getHomeAddress().get().id()).isEqualTo(address.id());
+        assertThat(foundJenny.getParent().get().getParent()).containsSame(tree);
+        assertThat(foundJenny.getChildren()).isEmpty();
+        Person deeperTree = repo.findTreeById(johnny.getId(), 3).get();
+
+        assertThat(deeperTree.getChildren()).singleElement().satisfies(child -> {
+            assertThat(child.getHomeAddress()).isEmpty();
+            assertThat(child.getChildren()).extracting(Person::getFirstName).containsExactly("Jake");
+        });
+        assertThat(repo.findTreeById(Long.MAX_VALUE, 3)).isEmpty();
+    }
+
+    @Test
+    public void detectsCyclesInFamilyTree() {
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1950, 11, 15, 15, 15, 00, 0, ZoneId.of("-6")));
+        Person johnny = new Person("Johnny", "Smith", ZonedDateTime.of(1980, 1, 1, 1, 0, 0, 0, ZoneId.of("-6")));
+        john.addChild(johnny);
+        johnny.addChild(john);
+
+        assertThatThrownBy(() -> repo.saveGraph(john)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(john.getId()).isNull();
+    }
+
+    @Test
+    public void canLoadAssociationsLazily() {
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1950, 11, 15, 15, 15, 00, 0, ZoneId.of("-6")));
+        john.setHomeAddress(new Address(null, "123 Beale St.", "Apt. 1A", "Wala Wala", "WA", "90210", "United States", "Fulton County", Region.WEST));
+        john.addChild(new Person("Johnny", "Smith", ZonedDateTime.of(1980, 1, 1, 1, 0, 0, 0, ZoneId.of("-6"))));
+        john.addChild(new Person("Jenny", "Smith", ZonedDateTime.of(1982, 1, 1, 1, 0, 0, 0, ZoneId.of("-6"))));
+        repo.save(john);
+
+        repo.setFetchPlan(FetchPlan.LAZY);
+        Person foundJohn = repo.findById(john.getId()).get();
+
+        assertThat(foundJohn.isAssociationsLoaded()).isFalse();
+        assertThat(foundJohn.getChildren()).hasSize(2);
+        assertThat(foundJohn.getHomeAddress().get().city()).isEqualTo("Wala Wala");
+        assertThat(foundJohn.getChildren()).allSatisfy(child -> assertThat(child.isAssociationsLoaded()).isFalse());
+    }
+
+    @Test
+    public void settersDoNotLoadAssociations() {
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1950, 11, 15, 15, 15, 00, 0, ZoneId.of("-6")));
+        john.setHomeAddress(new Address(null, "123 Beale St.", "Apt. 1A", "Wala Wala", "WA", "90210", "United States", "Fulton County", Region.WEST));
+        john.setBusinessAddress(new Address(null, "1 Main St.", null, "Wala Wala", "WA", "90210", "United States", "Fulton County", Region.WEST));
+        john.addChild(new Person("Johnny", "Smith", ZonedDateTime.of(1980, 1, 1, 1, 0, 0, 0, ZoneId.of("-6"))));
+        repo.save(john);
+
+        repo.setFetchPlan(FetchPlan.LAZY);
+        Person foundJohn = repo.findById(john.getId()).get();
+        Address newBusinessAddress = new Address(null, "2 Main St.", null, "Wala Wala", "WA", "90210", "United States", "Fulton County", Region.WEST);
+
+        foundJohn.setBusinessAddress(newBusinessAddress);
+        foundJohn.addChild(new Person("Jenny", "Smith", ZonedDateTime.of(1982, 1, 1, 1, 0, 0, 0, ZoneId.of("-6"))));
+
+        assertThat(foundJohn.isAssociationsLoaded()).isFalse();
+        // the loader keeps what was set before it ran
+        assertThat(foundJohn.getChildren()).extracting(Person::getFirstName).containsExactlyInAnyOrder("Johnny", "Jenny");
+        assertThat(foundJohn.getHomeAddress().get().streetAddress()).isEqualTo("123 Beale St.");
+        assertThat(foundJohn.getBusinessAddress()).containsSame(newBusinessAddress);
+    }
+
+    @Test
+    public void canLoadAssociationsOfPageInOneQuery() {
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1950, 11, 15, 15, 15, 00, 0, ZoneId.of("-6")));
+        Person bobby = new Person("Bobby", "Smith", ZonedDateTime.of(1952, 11, 15, 15, 15, 00, 0, ZoneId.of("-6")));
+        john.addChild(new Person("Johnny", "Smith", ZonedDateTime.of(1980, 1, 1, 1, 0, 0, 0, ZoneId.of("-6"))));
+        bobby.addChild(new Person("Bobby Jr.", "Smith", ZonedDateTime.of(1982, 1, 1, 1, 0, 0, 0, ZoneId.of("-6"))));
+        repo.saveAll(List.of(john, bobby));
+
+        repo.setFetchPlan(FetchPlan.BATCH_LAZY);
+        List<Person> people = repo.findPage(john.getId() - 1, 2).content();
+        long missCount = repo.getStatementCache().getMissCount();
+
+        assertThat(people.get(0).getChildren()).hasSize(1);
+        assertThat(people).allSatisfy(person -> assertThat(person.isAssociationsLoaded()).isTrue());
+        assertThat(people.get(1).getChildren()).hasSize(1);
+        assertThat(repo.getStatementCache().getMissCount()).isEqualTo(missCount + 1);
+    }
+
+    @Test
+    public void canFindAllById() {
+        List<Person> people = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            Person person = new Person("John" + i, "Smith", ZonedDateTime.of(1950, 11, 15, 15, 15, 00, 0, ZoneId.of("-6")));
+            person.addChild(new Person("Johnny" + i, "Smith", ZonedDateTime.of(1980, 1, 1, 1, 0, 0, 0, ZoneId.of("-6"))));
+            people.add(person);
+        }
+
+        repo.saveAll(people);
+        List<Long> ids = List.of(people.get(3).getId(), people.get(0).getId(), Long.MAX_VALUE, people.get(4).getId(), people.get(0).getId());
+        long missCount = repo.getStatementCache().getMissCount();
+
+        Map<Long, Person> found = repo.findAllById(ids);
+
+        assertThat(found.keySet()).containsExactly(people.get(3).getId(), people.get(0).getId(), people.get(4).getId());
+        assertThat(found.values()).allSatisfy(person -> assertThat(person.getChildren()).hasSize(1));
+        assertThat(repo.getStatementCache().getMissCount()).isEqualTo(missCount + 1);
+    }
+
+    @Test
+    public void canGenerateMultiGetSql() {
+        assertThat(SqlRegistry.toMultiGet("SELECT * FROM ADDRESSES WHERE ID = ?"))
+                .isEqualTo("SELECT * FROM ADDRESSES WHERE ID = ANY(?)\nORDER BY ID\n");
+        assertThat(SqlRegistry.toMultiGet(PeopleRepository.FIND_BY_ID_SQL)).contains("WHERE PARENT.ID = ANY(?) AND PARENT.DELETE_FLAG = FALSE\nORDER BY PARENT.ID");
+        assertThat(SqlRegistry.toMultiGet("SELECT * FROM PEOPLE WHERE ID = ? AND DOB > ?")).isNull();
+    }
+
     @Test
     public void canFindPersonById() {
         Person test = new Person("Test", "Johnson", ZonedDateTime.of(2000, 9, 1, 12, 0, 0, 0, ZoneId.of("+0")));
@@ -117,6 +293,18 @@ public class PeopleRepositoryTest {
         assertThat(foundPerson).isEqualTo(savedPerson);
     }
 
+    @Test
+    public void canMixQueryShapesOnOneRepository() {
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 00, 0, ZoneId.of("-6")));
+        john.addChild(new Person("Johnny", "Smith", ZonedDateTime.of(2010, 1, 1, 1, 0, 0, 0, ZoneId.of("-6"))));
+        repo.save(john);
+
+        // FIND_BY_ID_SQL selects CHILD_ and address columns, FIND_ALL_SQL doesn't
+        assertThat(repo.findById(john.getId()).get().getChildren()).hasSize(1);
+        assertThat(repo.findAll()).allSatisfy(person -> assertThat(person.getChildren()).isEmpty());
+        assertThat(repo.findById(john.getId()).get().getChildren()).hasSize(1);
+    }
+
     @Test
     public void canFindPersonByIdWithHomeAddress() throws SQLException {
         Person john = new Person("JohnZZZZ", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 00, 0, ZoneId.of("-6")));
@@ -184,7 +372,93 @@ public class PeopleRepositoryTest {
         repo.save(new Person("John8", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
 
         List<Person> people = repo.findAll();
-        assertThat(people.size()).isGreaterThanOrEqualTo(10);
+        assertThat(people).hasSize(9);
+    }
+
+    @Test
+    public void canStreamAll() {
+        Person p1 = repo.save(new Person("John1", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        Person p2 = repo.save(new Person("John2", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+
+        try (Stream<Person> people = repo.streamAll(1)) {
+            assertThat(people.filter(person -> person.getId().equals(p1.getId()) || person.getId().equals(p2.getId())))
+                    .extracting(Person::getFirstName)
+                    .containsExactlyInAnyOrder("John1", "John2");
+        }
+    }
+
+    @Test
+    public void canGroupChildrenOnForwardOnlyCursor() throws SQLException {
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+        john.addChild(new Person("Johnny", "Smith", ZonedDateTime.of(2010, 1, 1, 1, 0, 0, 0, ZoneId.of("-6"))));
+        john.addChild(new Person("Sarah", "Smith", ZonedDateTime.of(2012, 3, 1, 1, 0, 0, 0, ZoneId.of("-6"))));
+        Person bobby = new Person("Bobby", "Smith", ZonedDateTime.of(1982, 9, 13, 13, 13, 0, 0, ZoneId.of("-8")));
+        bobby.addChild(new Person("Jenny", "Smith", ZonedDateTime.of(2014, 5, 1, 1, 0, 0, 0, ZoneId.of("-6"))));
+        repo.saveAll(List.of(john, bobby));
+
+        String sql = PeopleRepository.FIND_BY_ID_SQL.replace("WHERE PARENT.ID = ?", "WHERE PARENT.ID IN (?, ?) ORDER BY PARENT.ID");
+
+        try (PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            ps.setLong(1, john.getId());
+            ps.setLong(2, bobby.getId());
+
+            try (ResultSet rs = ps.executeQuery()) {
+                List<Person> people = new ArrayList<>();
+                new EntityCursor<>(repo, rs).forEachRemaining(people::add);
+
+                assertThat(people).extracting(Person::getFirstName).containsExactly("John", "Bobby");
+                assertThat(people.get(0).getChildren()).extracting(Person::getFirstName).containsExactlyInAnyOrder("Johnny", "Sarah");
+                assertThat(people.get(1).getChildren()).extracting(Person::getFirstName).containsExactly("Jenny");
+            }
+        }
+    }
+
+    @Test
+    public void canFindPeopleByPage() {
+        List<Person> saved = repo.saveAll(List.of(
+                new Person("John1", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))),
+                new Person("John2", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))),
+                new Person("John3", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")))
+        ));
+
+        Page<Person> firstPage = repo.findPage(saved.get(0).getId() - 1, 2);
+        Page<Person> secondPage = repo.findPage(firstPage.nextAfterId(), 2);
+
+        assertThat(firstPage.content()).extracting(Person::getFirstName).containsExactly("John1", "John2");
+        assertThat(firstPage.nextAfterId()).isEqualTo(saved.get(1).getId());
+        assertThat(secondPage.content()).extracting(Person::getFirstName).containsExactly("John3");
+        assertThat(secondPage.hasNext()).isFalse();
+    }
+
+    @Test
+    public void canFindSummariesByPage() {
+        Person john = new Person("John1", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+        john.setSalary(new BigDecimal("73000"));
+        List<Person> saved = repo.saveAll(List.of(
+                john,
+                new Person("John2", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")))
+        ));
+
+        Page<PersonSummary> page = repo.findSummaryPage(saved.get(0).getId() - 1, 1);
+
+        assertThat(page.content()).containsExactly(new PersonSummary(john.getId(), "John1", "Smith", new BigDecimal("73000")));
+        assertThat(repo.findSummaryPage(page.nextAfterId(), 1).content()).extracting(PersonSummary::firstName).containsExactly("John2");
+    }
+
+    @Test
+    public void canFindAddressesByPage() {
+        AddressRepository addressRepository = new AddressRepository(connection);
+        List<Address> saved = addressRepository.saveAll(List.of(
+                new Address(null, "1 Beale St.", null, "Wala Wala", "WA", "90210", "United States", "Fulton County", Region.WEST),
+                new Address(null, "2 Beale St.", null, "Wala Wala", "WA", "90210", "United States", "Fulton County", Region.WEST)
+        ));
+
+        Page<Address> page = addressRepository.findPage(saved.get(0).id() - 1, 1);
+
+        assertThat(page.content()).extracting(Address::streetAddress).containsExactly("1 Beale St.");
+        assertThat(addressRepository.findPage(page.nextAfterId(), 1).content())
+                .extracting(Address::streetAddress)
+                .containsExactly("2 Beale St.");
     }
 
     @Test
@@ -219,13 +493,69 @@ public class PeopleRepositoryTest {
 
         long startCount = repo.count();
 
-        repo.delete(p1, p2);
+        long deletedCount = repo.delete(p1, p2);
 
         long endCount = repo.count();
 
+        assertThat(deletedCount).isEqualTo(2);
         assertThat(endCount).isEqualTo(startCount - 2);
     }
 
+    @Test
+    public void canDeleteAllByIdKeepingChildren() {
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1950, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+        Person johnny = new Person("Johnny", "Smith", ZonedDateTime.of(1980, 1, 1, 1, 0, 0, 0, ZoneId.of("-6")));
+        john.addChild(johnny);
+        repo.save(john);
+
+        long deletedCount = repo.deleteAllById(Stream.of(john.getId(), Long.MAX_VALUE));
+
+        assertThat(deletedCount).isEqualTo(1);
+        assertThat(repo.findById(john.getId())).isEmpty();
+        assertThat(repo.findById(johnny.getId())).isPresent();
+    }
+
+    @Test
+    public void canDeleteAllByIdInChunks() {
+        List<Person> people = new ArrayList<>();
+
+        for (int i = 0; i < GrudRepository.MULTI_GET_CHUNK_SIZE + 5; i++) {
+            people.add(new Person("John" + i, "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        }
+
+        repo.saveAll(people);
+        long startCount = repo.count();
+
+        long deletedCount = repo.deleteAllById(people.stream().map(Person::getId).toList());
+
+        assertThat(deletedCount).isEqualTo(people.size());
+        assertThat(repo.count()).isEqualTo(startCount - people.size());
+    }
+
+    @Test
+    public void canSoftDeleteAndPurge() throws SQLException {
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1950, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+        Person johnny = new Person("Johnny", "Smith", ZonedDateTime.of(1980, 1, 1, 1, 0, 0, 0, ZoneId.of("-6")));
+        Person bobby = repo.save(new Person("Bobby", "Smith", ZonedDateTime.of(1982, 9, 13, 13, 13, 0, 0, ZoneId.of("-8"))));
+        john.addChild(johnny);
+        repo.save(john);
+        long startCount = repo.count();
+
+        repo.setSoftDelete(true);
+        repo.delete(johnny);
+        repo.deleteAllById(List.of(john.getId(), bobby.getId()));
+
+        assertThat(repo.count()).isEqualTo(startCount - 3);
+        assertThat(repo.findById(john.getId())).isEmpty();
+        assertThat(repo.findAllById(List.of(john.getId(), bobby.getId()))).isEmpty();
+        assertThat(countRows("SELECT COUNT(*) FROM PEOPLE WHERE DELETE_FLAG = TRUE")).isEqualTo(3);
+
+        assertThat(repo.purgeDeleted(2)).isEqualTo(2);
+        assertThat(repo.purgeDeleted(2)).isEqualTo(1);
+        assertThat(repo.purgeDeleted(2)).isZero();
+        assertThat(countRows("SELECT COUNT(*) FROM PEOPLE WHERE DELETE_FLAG = TRUE")).isZero();
+    }
+
     @Test
     public void experiment() {
         Person p1 = new Person(10L, null, null, null);
@@ -262,30 +592,176 @@ public class PeopleRepositoryTest {
         assertThat(p2.getSalary()).isNotEqualTo(p1.getSalary());
     }
 
-    // It's a good place for execute our code once
     @Test
-    @Disabled
-    public void loadData() throws IOException, SQLException {
-        Files
-                .lines(Path.of("C:\\Users\\ahanchar\\Desktop\\java\\Hr5m\\Hr5m.csv"))
-                .skip(1)
-//                .limit(100)
-                .map(line -> line.split(","))
-                .map(array -> {
-                    LocalDate dob = LocalDate.parse(array[10], DateTimeFormatter.ofPattern("M/d/yyyy"));
-                    LocalTime tob = LocalTime.parse(array[11], DateTimeFormatter.ofPattern("hh:mm:ss a"));
-                    LocalDateTime dtob = LocalDateTime.of(dob, tob);
-                    ZonedDateTime zdtob = ZonedDateTime.of(dtob, ZoneId.of("+0"));
+    public void updatesOnlyChangedColumns() throws SQLException {
+        Person savedPerson = repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        Person john = repo.findById(savedPerson.getId()).get();
 
-                    Person person = new Person(array[2], array[4], zdtob);
+        assertThat(repo.updateAll(List.of(john))).isZero();
 
-                    person.setSalary(new BigDecimal(array[25]));
-                    person.setEmail(array[6]);
+        try (PreparedStatement ps = connection.prepareStatement("UPDATE PEOPLE SET LAST_NAME = 'Changed Elsewhere' WHERE ID = ?")) {
+            ps.setLong(1, john.getId());
+            ps.executeUpdate();
+        }
 
-                    return person;
-                })
-                .forEach(repo::save);
+        john.setFirstName("Johnny");
+        repo.update(john);
 
-//        connection.commit();
+        assertThat(countRows("SELECT COUNT(*) FROM PEOPLE WHERE FIRST_NAME = 'Johnny' AND LAST_NAME = 'Changed Elsewhere' AND ID = " + john.getId())).isEqualTo(1);
+        assertThat(repo.updateAll(List.of(john))).isZero();
+    }
+
+    @Test
+    public void canUpdateAllGroupedByChangedColumns() {
+        List<Person> people = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            people.add(new Person("John" + i, "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        }
+
+        repo.saveAll(people);
+        List<Person> found = new ArrayList<>(repo.findAllById(people.stream().map(Person::getId).toList()).values());
+
+        found.get(0).setSalary(new BigDecimal("1000"));
+        found.get(1).setSalary(new BigDecimal("2000"));
+        found.get(2).setLastName("Jones");
+        found.get(4).setSalary(new BigDecimal("0.00"));
+
+        assertThat(repo.updateAll(found)).isEqualTo(3);
+
+        Map<Long, Person> updated = repo.findAllById(people.stream().map(Person::getId).toList());
+
+        assertThat(updated.get(found.get(1).getId()).getSalary()).isEqualByComparingTo("2000");
+        assertThat(updated.get(found.get(2).getId()).getLastName()).isEqualTo("Jones");
+        assertThat(updated.get(found.get(2).getId()).getSalary()).isEqualByComparingTo("0");
+    }
+
+    @Test
+    public void canSaveAllInBatches() {
+        Address address = new Address(null, "123 Beale St.", "Apt. 1A", "Wala Wala", "WA", "90210", "United States", "Fulton County", Region.WEST);
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+        Person bobby = new Person("Bobby", "Smith", ZonedDateTime.of(1982, 9, 13, 13, 13, 0, 0, ZoneId.of("-8")));
+        Person sarah = new Person("Sarah", "Smith", ZonedDateTime.of(1984, 3, 1, 1, 0, 0, 0, ZoneId.of("-6")));
+
+        john.setHomeAddress(address);
+        bobby.setBusinessAddress(address);
+        john.addChild(new Person("Johnny", "Smith", ZonedDateTime.of(2010, 1, 1, 1, 0, 0, 0, ZoneId.of("-6"))));
+
+        long startCount = repo.count();
+
+        List<Person> savedPeople = repo.saveAll(List.of(john, bobby, sarah), 2);
+
+        assertThat(savedPeople).extracting(Person::getId).doesNotContainNull().doesNotHaveDuplicates();
+        assertThat(address.id()).isGreaterThan(0);
+        assertThat(repo.count()).isEqualTo(startCount + 4);
+        assertThat(repo.findById(john.getId()).get().getChildren())
+                .extracting(Person::getFirstName)
+                .containsExactly("Johnny");
+        assertThat(repo.findById(bobby.getId()).get().getBusinessAddress().get().id()).isEqualTo(address.id());
+    }
+
+    @Test
+    public void sqlIsResolvedOncePerRepositoryClass() {
+        PeopleRepository anotherRepo = new PeopleRepository(connection);
+
+        assertThat(SqlRegistry.of(anotherRepo)).isSameAs(SqlRegistry.of(repo));
+        assertThat(repo.sql(CrudOperation.FIND_BY_ID)).isEqualTo(PeopleRepository.FIND_BY_ID_SQL);
+    }
+
+    @Test
+    public void missingSqlFailsFast() {
+        AddressRepository addressRepository = new AddressRepository(connection);
+
+        assertThatThrownBy(addressRepository::count)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("COUNT");
+    }
+
+    @Test
+    public void canReuseCachedStatements() {
+        repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        repo.save(new Person("John1", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        repo.count();
+        repo.count();
+
+        assertThat(repo.getStatementCache().getMissCount()).isEqualTo(2);
+        assertThat(repo.getStatementCache().getHitCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void statementCacheClosesEvictedStatements() throws SQLException {
+        try (StatementCache cache = new StatementCache(connection, 1)) {
+            PreparedStatement first = cache.prepare(PeopleRepository.SELECT_COUNT_SQL);
+            cache.prepare(PeopleRepository.DELETE_SQL);
+
+            assertThat(first.isClosed()).isTrue();
+            assertThat(cache.getEvictionCount()).isEqualTo(1);
+            assertThat(cache.size()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void statementCacheKeepsStatementsOfOperationInProgress() throws SQLException {
+        try (StatementCache cache = new StatementCache(connection, 1)) {
+            cache.beginOperation();
+            PreparedStatement outer = cache.prepare(PeopleRepository.SELECT_COUNT_SQL);
+            PreparedStatement nested = cache.prepare(PeopleRepository.DELETE_SQL);
+
+            assertThat(outer.isClosed()).isFalse();
+            assertThat(cache.size()).isEqualTo(2);
+
+            cache.endOperation();
+
+            assertThat(outer.isClosed()).isTrue();
+            assertThat(nested.isClosed()).isFalse();
+            assertThat(cache.size()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void statementCacheReportsStatementsFailingToClose() throws SQLException {
+        SQLException closeFailure = new SQLException("Close failed");
+        PreparedStatement failingStatement = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { PreparedStatement.class }, (proxy, method, args) -> {
+                    if (method.getName().equals("close")) {
+                        throw closeFailure;
+                    }
+
+                    return method.getName().equals("isClosed") ? false : null;
+                });
+        Connection failingConnection = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { Connection.class }, (proxy, method, args) -> failingStatement);
+        List<Throwable> errors = new ArrayList<>();
+
+        try (StatementCache cache = new StatementCache(failingConnection, 1, errors::add)) {
+            cache.prepare(PeopleRepository.SELECT_COUNT_SQL);
+            cache.prepare(PeopleRepository.DELETE_SQL);
+        }
+
+        assertThat(errors).containsExactly(closeFailure, closeFailure);
+    }
+
+    @Test
+    public void canSaveWithStatementCacheSmallerThanNesting() {
+        PeopleRepository smallCacheRepo = new PeopleRepository(new SingleConnectionProvider(connection, 1));
+        smallCacheRepo.setDeduplicateAddresses(true);
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+        john.setHomeAddress(new Address(null, "123 Beale St.", "Apt. 1A", "Wala Wala", "WA", "90210", "United States", "Fulton County", Region.WEST));
+
+        smallCacheRepo.save(john);
+
+        Person found = smallCacheRepo.findById(john.getId()).get();
+
+        assertThat(found.getHomeAddress().get().streetAddress()).isEqualTo("123 Beale St.");
+        assertThat(smallCacheRepo.getStatementCache().size()).isEqualTo(1);
+    }
+
+    private long countRows(String sql) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+
+            return rs.getLong(1);
+        }
     }
 }
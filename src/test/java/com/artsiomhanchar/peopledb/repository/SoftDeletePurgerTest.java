@@ -0,0 +1,116 @@
+package com.artsiomhanchar.peopledb.repository;
+
+import com.artsiomhanchar.peopledb.TestDatabase;
+import com.artsiomhanchar.peopledb.model.Person;
+import com.artsiomhanchar.peopledb.pool.ConnectionPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SoftDeletePurgerTest {
+    private TestDatabase database;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        database = TestDatabase.create();
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        database.close();
+    }
+
+    @Test
+    public void purgesInSmallBatches() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(database.dataSource(), 2);
+             PeopleRepository repo = new PeopleRepository(pool);
+             SoftDeletePurger purger = new SoftDeletePurger(repo, Duration.ofMillis(10))) {
+            repo.setSoftDelete(true);
+            repo.deleteAllById(savePeople(repo, 25));
+
+            purger.setBatchSize(10);
+            purger.setPauseBetweenBatches(Duration.ofMillis(1));
+            purger.setQuietPeriod(SoftDeletePurger.poolIsIdle(pool));
+            purger.start();
+
+            long deadline = System.currentTimeMillis() + 5_000;
+
+            while (purger.getPurgedCount() < 25 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertThat(purger.getPurgedCount()).isEqualTo(25);
+            assertThat(countRows()).isZero();
+        }
+    }
+
+    @Test
+    public void waitsForQuietPeriod() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(database.dataSource(), 2);
+             PeopleRepository repo = new PeopleRepository(pool);
+             SoftDeletePurger purger = new SoftDeletePurger(repo, Duration.ofSeconds(1))) {
+            repo.setSoftDelete(true);
+            repo.deleteAllById(savePeople(repo, 5));
+
+            purger.setQuietPeriod(() -> false);
+
+            assertThat(purger.purgeNow()).isZero();
+            assertThat(repo.count()).isZero();
+            assertThat(countRows()).isEqualTo(5);
+        }
+    }
+
+    @Test
+    public void reportsFailedRunsAndKeepsRunning() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(database.dataSource(), 2);
+             PeopleRepository repo = new PeopleRepository(pool);
+             SoftDeletePurger purger = new SoftDeletePurger(repo, Duration.ofMillis(10))) {
+            List<RuntimeException> failures = new CopyOnWriteArrayList<>();
+
+            purger.setQuietPeriod(() -> {
+                throw new IllegalStateException("no metrics");
+            });
+            purger.setFailureListener(failures::add);
+            purger.start();
+
+            long deadline = System.currentTimeMillis() + 5_000;
+
+            while (failures.size() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertThat(failures).hasSizeGreaterThanOrEqualTo(2).allSatisfy(e -> assertThat(e).hasMessage("no metrics"));
+        }
+    }
+
+    private static List<Long> savePeople(PeopleRepository repo, int count) {
+        List<Person> people = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            people.add(new Person("John" + i, "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        }
+
+        return repo.saveAll(people).stream().map(Person::getId).toList();
+    }
+
+    private long countRows() throws SQLException {
+        try (Statement stmt = database.connection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM PEOPLE")) {
+            rs.next();
+
+            return rs.getLong(1);
+        }
+    }
+}
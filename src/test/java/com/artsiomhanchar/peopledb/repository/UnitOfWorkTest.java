@@ -0,0 +1,128 @@
+package com.artsiomhanchar.peopledb.repository;
+
+import com.artsiomhanchar.peopledb.TestDatabase;
+import com.artsiomhanchar.peopledb.model.Address;
+import com.artsiomhanchar.peopledb.model.Person;
+import com.artsiomhanchar.peopledb.model.Region;
+import com.artsiomhanchar.peopledb.pool.ConnectionPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UnitOfWorkTest {
+    private TestDatabase database;
+    private ConnectionPool pool;
+    private PeopleRepository repo;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        database = TestDatabase.create();
+        pool = new ConnectionPool(database.dataSource(), 2);
+        repo = new PeopleRepository(pool);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        pool.close();
+        database.close();
+    }
+
+    @Test
+    public void answersRepeatedLookupsFromIdentityMap() throws SQLException {
+        Person john = repo.save(newPerson("John"));
+
+        try (UnitOfWork unitOfWork = UnitOfWork.begin(repo)) {
+            Person found = repo.findById(john.getId()).get();
+            // the connection is pinned to the unit of work, a query would show up as a statement cache hit
+            long statementCacheHits = pool.getMetrics().statementCacheHits();
+
+            assertThat(repo.findById(john.getId()).get()).isSameAs(found);
+            assertThat(pool.getMetrics().statementCacheHits()).isEqualTo(statementCacheHits);
+        }
+
+        assertThat(repo.findById(john.getId()).get()).isNotSameAs(repo.findById(john.getId()).get());
+    }
+
+    @Test
+    public void sharesAddressInstancesBetweenPeople() throws SQLException {
+        Address address = new Address(null, "123 Beale St.", "Apt. 1A", "Wala Wala", "WA", "90210", "United States", "Fulton County", Region.WEST);
+        Person john = newPerson("John");
+        Person bobby = newPerson("Bobby");
+        john.setHomeAddress(address);
+        bobby.setBusinessAddress(address);
+        repo.saveAll(List.of(john, bobby));
+
+        try (UnitOfWork unitOfWork = UnitOfWork.begin(repo)) {
+            unitOfWork.getIdentityMap().clear();
+
+            Address johnsAddress = repo.findById(john.getId()).get().getHomeAddress().get();
+            Address bobbysAddress = repo.findById(bobby.getId()).get().getBusinessAddress().get();
+
+            assertThat(bobbysAddress).isSameAs(johnsAddress);
+        }
+    }
+
+    @Test
+    public void everyFinderHandsOutTheSameInstance() throws SQLException {
+        Person john = newPerson("John");
+        Person bobby = newPerson("Bobby");
+        john.addChild(bobby);
+        repo.saveGraph(john);
+
+        try (UnitOfWork unitOfWork = UnitOfWork.begin(repo)) {
+            unitOfWork.getIdentityMap().clear();
+
+            Person found = repo.findById(john.getId()).get();
+
+            assertThat(repo.findAll()).filteredOn(person -> person.getId().equals(john.getId())).singleElement().isSameAs(found);
+            assertThat(repo.find(Criteria.where(PeopleRepository.ID).eq(john.getId()))).singleElement().isSameAs(found);
+            assertThat(repo.findPage(null, 10).content()).anySatisfy(person -> assertThat(person).isSameAs(found));
+            assertThat(repo.findTreeById(john.getId(), 1)).containsSame(found);
+
+            try (var people = repo.streamAll()) {
+                assertThat(people.filter(person -> person.getId().equals(bobby.getId()))).singleElement()
+                        .isSameAs(found.getChildren().iterator().next());
+            }
+        }
+    }
+
+    @Test
+    public void clearsIdentityMapOnCommitAndRollback() throws SQLException {
+        try (UnitOfWork unitOfWork = UnitOfWork.begin(repo)) {
+            Person john = repo.save(newPerson("John"));
+
+            assertThat(repo.findById(john.getId()).get()).isSameAs(john);
+
+            unitOfWork.commit();
+
+            assertThat(unitOfWork.getIdentityMap().size()).isZero();
+            assertThat(repo.findById(john.getId()).get()).isNotSameAs(john);
+
+            Person bobby = repo.save(newPerson("Bobby"));
+            unitOfWork.rollback();
+
+            assertThat(repo.findById(bobby.getId())).isEmpty();
+        }
+
+        assertThat(repo.count()).isEqualTo(1);
+    }
+
+    @Test
+    public void cannotNestUnitsOfWork() throws SQLException {
+        try (UnitOfWork unitOfWork = UnitOfWork.begin(repo)) {
+            assertThatThrownBy(() -> UnitOfWork.begin(repo)).isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    private static Person newPerson(String firstName) {
+        return new Person(firstName, "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+    }
+}